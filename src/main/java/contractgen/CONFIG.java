@@ -21,8 +21,14 @@ public class CONFIG {
 
     public enum PROCESSOR {IBEX, CVA6}
 
+    public enum EXTRACTOR {RVFI, ISA}
+
     public final String NAME;
     public final PROCESSOR CORE;
+    public final SIMULATOR BACKEND;
+    public final int BATCH;
+    public final EXTRACTOR EXTRACTION;
+    public final int CHECK_INTERVAL;
     public final Set<RISCV_SUBSET> subsets;
     public final Set<RISCV_OBSERVATION_TYPE> allowed_observations;
     public final int THREADS;
@@ -62,6 +68,13 @@ public class CONFIG {
 
     /**
      * @param NAME                       The name of the config.
+     * @param BACKEND                    The simulator used for training and evaluation.
+     * @param BATCH                      The number of test cases simulated side by side by a multi-instance
+     *                                   testbench, only supported by Icarus Verilog. 1 simulates them one by one.
+     * @param EXTRACTION                 Whether the test results are extracted from the RVFI signals of the trace or
+     *                                   by executing the programs with an interpreter, which dumps a smaller trace.
+     * @param CHECK_INTERVAL             Every how many test cases the interpreter is checked against the trace, 0 to
+     *                                   never check it. Ignored when extracting from the trace.
      * @param subsets                    The allowed ISA subsets.
      * @param allowed_observations       The allowed observations.
      * @param THREADS                    The number of threads.
@@ -77,9 +90,13 @@ public class CONFIG {
      * @param EVAL_EXISTING_NAME         If an existing evaluation set should be used, the name.
      * @param EVAL_EXISTING_FLIP_T_E     Whether the training or eval of the existing set should be used.
      */
-    private CONFIG(String NAME, PROCESSOR CORE, Set<RISCV_SUBSET> subsets, Set<RISCV_OBSERVATION_TYPE> allowed_observations, int THREADS, boolean DEBUG, CONTRACT_SOURCE TRAINING_SOURCE, int TRAINING_NEW_COUNT, long TRAINING_NEW_SEED, String TRAINING_EXISTING_NAME, boolean TRAINING_EXISTING_FLIP_T_E, RISCVContract TRAINING_PREDEFINED, CONTRACT_SOURCE EVAL_SOURCE, int EVAL_NEW_COUNT, long EVAL_NEW_SEED, String EVAL_EXISTING_NAME, boolean EVAL_EXISTING_FLIP_T_E) {
+    private CONFIG(String NAME, PROCESSOR CORE, SIMULATOR BACKEND, int BATCH, EXTRACTOR EXTRACTION, int CHECK_INTERVAL, Set<RISCV_SUBSET> subsets, Set<RISCV_OBSERVATION_TYPE> allowed_observations, int THREADS, boolean DEBUG, CONTRACT_SOURCE TRAINING_SOURCE, int TRAINING_NEW_COUNT, long TRAINING_NEW_SEED, String TRAINING_EXISTING_NAME, boolean TRAINING_EXISTING_FLIP_T_E, RISCVContract TRAINING_PREDEFINED, CONTRACT_SOURCE EVAL_SOURCE, int EVAL_NEW_COUNT, long EVAL_NEW_SEED, String EVAL_EXISTING_NAME, boolean EVAL_EXISTING_FLIP_T_E) {
         this.NAME = NAME;
         this.CORE = CORE;
+        this.BACKEND = BACKEND;
+        this.BATCH = BATCH;
+        this.EXTRACTION = EXTRACTION;
+        this.CHECK_INTERVAL = CHECK_INTERVAL;
         this.subsets = subsets;
         this.allowed_observations = allowed_observations;
         this.THREADS = THREADS;
@@ -104,6 +121,10 @@ public class CONFIG {
         return new CONFIG(
                 "ibex_small",
                 PROCESSOR.IBEX,
+                SIMULATOR.IVERILOG,
+                1,
+                EXTRACTOR.RVFI,
+                0,
                 Set.of(RISCV_SUBSET.BASE, RISCV_SUBSET.M),
                 Arrays.stream(RISCV_OBSERVATION_TYPE.values()).collect(Collectors.toSet()),
                 126,
@@ -129,6 +150,10 @@ public class CONFIG {
         return new CONFIG(
                 "ibex_large",
                 PROCESSOR.IBEX,
+                SIMULATOR.IVERILOG,
+                1,
+                EXTRACTOR.RVFI,
+                0,
                 Set.of(RISCV_SUBSET.BASE, RISCV_SUBSET.M),
                 Arrays.stream(RISCV_OBSERVATION_TYPE.values()).collect(Collectors.toSet()),
                 126,
@@ -154,6 +179,10 @@ public class CONFIG {
         return new CONFIG(
                 "cva6_small",
                 PROCESSOR.CVA6,
+                SIMULATOR.IVERILOG,
+                1,
+                EXTRACTOR.RVFI,
+                0,
                 Set.of(RISCV_SUBSET.BASE, RISCV_SUBSET.M),
                 Arrays.stream(RISCV_OBSERVATION_TYPE.values()).collect(Collectors.toSet()),
                 126,
@@ -179,6 +208,10 @@ public class CONFIG {
         return new CONFIG(
                 "cva6_large",
                 PROCESSOR.CVA6,
+                SIMULATOR.IVERILOG,
+                1,
+                EXTRACTOR.RVFI,
+                0,
                 Set.of(RISCV_SUBSET.BASE, RISCV_SUBSET.M),
                 Arrays.stream(RISCV_OBSERVATION_TYPE.values()).collect(Collectors.toSet()),
                 126,
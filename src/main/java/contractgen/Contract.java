@@ -2,6 +2,7 @@ package contractgen;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import contractgen.util.BitUtils;
 
 import java.io.FileWriter;
 import java.io.IOException;
@@ -21,6 +22,36 @@ public abstract class Contract {
      * The latest synthesized contract
      */
     private Set<Observation> current_contract = new HashSet<>();
+    /**
+     * The bitset of the latest synthesized contract, rebuilt whenever the contract is replaced.
+     */
+    private transient IndexedContract indexed_contract;
+    /**
+     * The coverage of the test results by the latest synthesized contract, built on first use.
+     */
+    private transient Coverage coverage;
+    /**
+     * Whether the current contract was computed by the updater for the first solved_results test results.
+     */
+    private transient boolean solved;
+    /**
+     * The number of test results the current contract was computed for.
+     */
+    private transient int solved_results;
+    /**
+     * The number of updates that were skipped as the new test results could not change the contract.
+     */
+    private transient int skipped_updates;
+
+    /**
+     * A contract as bitset over the indexes of its observations.
+     *
+     * @param contract     The contract.
+     * @param bits         The observations as bitset or null if not all observations are indexed.
+     * @param observations The observations of the contract by their index.
+     */
+    private record IndexedContract(Set<Observation> contract, long[] bits, Observation[] observations) {
+    }
 
 
     /**
@@ -53,16 +84,54 @@ public abstract class Contract {
      */
     public boolean update(boolean force) {
         if (!force && coversAll()) return false;
+        if (solved && updater.isOptimal() && agreesWithNewResults()) {
+            // the current contract is still optimal
+            solved_results = testResults.size();
+            skipped_updates++;
+            return false;
+        }
         Set<Observation> old = current_contract;
         current_contract = updater.update(testResults, old);
+        if (coverage != null) coverage.setContract(current_contract);
+        solved = true;
+        solved_results = testResults.size();
         return !Objects.equals(old, current_contract);
     }
 
+    /**
+     * A new result agrees with the contract if it is distinguishable and covered or indistinguishable and not covered.
+     *
+     * @return Whether all test results added since the contract was computed agree with it.
+     */
+    private boolean agreesWithNewResults() {
+        for (int i = solved_results; i < testResults.size(); i++) {
+            TestResult res = testResults.get(i);
+            if (res.isAdversaryDistinguishable() != covers(res)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Forces the next update to compute the contract, e.g. after test results have been modified or reordered.
+     */
+    protected void invalidate() {
+        solved = false;
+        coverage = null;
+        updater.reset();
+    }
+
+    /**
+     * @return The number of updates that were skipped as the new test results could not change the contract.
+     */
+    public int getSkippedUpdates() {
+        return skipped_updates;
+    }
+
     /**
      * @return Whether the current computed contract covers all collected test results.
      */
     public boolean coversAll() {
-        return coversAll(testResults, current_contract);
+        return getCoverage().coversAll();
     }
 
     /**
@@ -79,7 +148,8 @@ public abstract class Contract {
      * @return Whether the given contract covers the given test results.
      */
     public static boolean coversAll(List<TestResult> testResults, Set<Observation> contract) {
-        return testResults.stream().filter(TestResult::isAdversaryDistinguishable).filter(ctx -> covers(contract, ctx)).collect(Collectors.toSet()).containsAll(testResults);
+        long[] bits = TestResult.toBits(contract);
+        return testResults.stream().filter(TestResult::isAdversaryDistinguishable).filter(ctx -> covers(contract, bits, ctx)).collect(Collectors.toSet()).containsAll(testResults);
     }
 
     /**
@@ -87,7 +157,7 @@ public abstract class Contract {
      * @return Whether the current computed contract covers the given result.
      */
     public boolean covers(TestResult res) {
-        return covers(current_contract, res);
+        return covers(current_contract, getIndexedContract().bits(), res);
     }
 
     /**
@@ -96,7 +166,19 @@ public abstract class Contract {
      * @return Whether the given contract covers the given result.
      */
     public static boolean covers(Set<Observation> contract, TestResult res) {
-        return contract.stream().anyMatch(obs -> res.getPossibleObservations().contains(obs));
+        return contract.stream().anyMatch(res::hasObservation);
+    }
+
+    /**
+     * @param contract The contract to be used.
+     * @param bits     The contract as bitset or null if it is not indexed.
+     * @param res      The test result to be checked.
+     * @return Whether the given contract covers the given result.
+     */
+    private static boolean covers(Set<Observation> contract, long[] bits, TestResult res) {
+        if (bits != null && res.getObservationBits() != null)
+            return BitUtils.intersects(bits, res.getObservationBits());
+        return covers(contract, res);
     }
 
     /**
@@ -105,7 +187,7 @@ public abstract class Contract {
      * @return Whether the given contract covers the given result.
      */
     public static Set<Observation> whyCovers(Set<Observation> contract, TestResult res) {
-        return contract.stream().filter(obs -> res.getPossibleObservations().contains(obs)).collect(Collectors.toSet());
+        return contract.stream().filter(res::hasObservation).collect(Collectors.toSet());
     }
 
     /**
@@ -113,7 +195,49 @@ public abstract class Contract {
      * @return Whether the given contract covers the given result.
      */
     public Set<Observation> whyCovers(TestResult res) {
-        return whyCovers(this.current_contract, res);
+        IndexedContract indexed = getIndexedContract();
+        if (indexed.bits() == null || res.getObservationBits() == null)
+            return whyCovers(this.current_contract, res);
+        Set<Observation> reasons = new HashSet<>();
+        long[] bits = res.getObservationBits();
+        for (int i = 0; i < Math.min(bits.length, indexed.bits().length); i++) {
+            long common = bits[i] & indexed.bits()[i];
+            while (common != 0) {
+                reasons.add(indexed.observations()[(i << 6) + Long.numberOfTrailingZeros(common)]);
+                common &= common - 1;
+            }
+        }
+        return reasons;
+    }
+
+    /**
+     * @return The coverage of all collected test results by the latest synthesized contract.
+     */
+    public Coverage getCoverage() {
+        if (coverage == null || coverage.getTotal() != testResults.size()) {
+            coverage = new Coverage(testResults, current_contract);
+        }
+        return coverage;
+    }
+
+    /**
+     * @return The latest synthesized contract as bitset.
+     */
+    private IndexedContract getIndexedContract() {
+        IndexedContract indexed = indexed_contract;
+        if (indexed != null && indexed.contract() == current_contract) return indexed;
+        Set<Observation> contract = current_contract;
+        long[] bits = TestResult.toBits(contract);
+        Observation[] observations = null;
+        if (bits != null) {
+            observations = new Observation[bits.length << 6];
+            for (Observation obs : contract) {
+                observations[obs.getIndex()] = obs;
+            }
+        }
+        indexed = new IndexedContract(contract, bits, observations);
+        indexed_contract = indexed;
+        return indexed;
     }
 
     /**
@@ -123,6 +247,7 @@ public abstract class Contract {
      */
     public void add(TestResult res) {
         testResults.add(res);
+        if (coverage != null) coverage.add(res);
     }
 
     /**
@@ -145,6 +270,7 @@ public abstract class Contract {
      */
     public void sort() {
         this.testResults.sort(Comparator.comparingInt(TestResult::getIndex));
+        invalidate();
     }
 
     /**
@@ -180,21 +306,21 @@ public abstract class Contract {
      * @return The number of distinguishable test results
      */
     public int getDistinguishableCount() {
-        return (int) getTestResults().stream().filter(TestResult::isAdversaryDistinguishable).count();
+        return getCoverage().getDistinguishableCount();
     }
 
     /**
      * @return The number of indistinguishable test results
      */
     public int getIndistinguishableCount() {
-        return (int) getTestResults().stream().filter(TestResult::isAdversaryIndistinguishable).count();
+        return getCoverage().getIndistinguishableCount();
     }
 
     /**
      * @return The number of false positives according to the latest contract
      */
     public int getFalsePositiveCount() {
-        return (int) getTestResults().stream().filter(TestResult::isAdversaryIndistinguishable).filter(this::covers).count();
+        return getCoverage().getFalsePositiveCount();
     }
 
     /**
@@ -217,6 +343,8 @@ public abstract class Contract {
         sb.append("Contract: ").append("\n");
         sb.append("\tSize: ").append(getContractSize()).append("\n");
         sb.append("\tFalse Positives: ").append(getFalsePositiveCount()).append("\n");
+        sb.append("\tSkipped Updates: ").append(getSkippedUpdates()).append("\n");
+        sb.append(updater.getStats());
         return sb.toString();
     }
 
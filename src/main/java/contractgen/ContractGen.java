@@ -4,8 +4,11 @@ import contractgen.generator.iverilog.ParallelIverilogGenerator;
 import contractgen.riscv.cva6.CVA6;
 import contractgen.riscv.ibex.IBEX;
 import contractgen.riscv.isa.RISCVInstruction;
+import contractgen.riscv.isa.RISCVInterpreter;
 import contractgen.riscv.isa.contract.RISCVContract;
 import contractgen.riscv.isa.contract.RISCV_OBSERVATION_TYPE;
+import contractgen.riscv.isa.extractor.ISAExtractor;
+import contractgen.riscv.isa.extractor.RVFIExtractor;
 
 import static contractgen.riscv.isa.contract.RISCV_OBSERVATION_TYPE.*;
 
@@ -75,11 +78,37 @@ public class ContractGen {
                 cfg.getPATH() + cfg.NAME + "/" + name,
                 cfg.THREADS,
                 0,
-                contract_template
+                contract_template,
+                false
         );
 
     }
 
+    /**
+     * @param cfg       The configuration.
+     * @param testCases The test cases to be simulated.
+     * @return The microarchitecture of the configuration using its simulator and extractor. The native backend uses an
+     * in-process model per thread.
+     */
+    private static MARCH createMARCH(CONFIG cfg, TestCases testCases) {
+        return switch (cfg.CORE) {
+            case IBEX -> new IBEX(new ILPUpdater(), testCases, cfg.BACKEND, cfg.BATCH, createExtractor(cfg, RISCVInterpreter.ibex()));
+            case CVA6 -> new CVA6(new ILPUpdater(), testCases, cfg.BACKEND, cfg.BATCH, createExtractor(cfg, RISCVInterpreter.cva6()));
+        };
+    }
+
+    /**
+     * @param cfg         The configuration.
+     * @param interpreter The interpreter matching the testbench of the configured core.
+     * @return The extractor of the configuration.
+     */
+    private static Extractor createExtractor(CONFIG cfg, RISCVInterpreter interpreter) {
+        return switch (cfg.EXTRACTION) {
+            case RVFI -> new RVFIExtractor();
+            case ISA -> new ISAExtractor(interpreter, cfg.CHECK_INTERVAL);
+        };
+    }
+
     public static void run(CONFIG cfg) throws IOException {
         String path = cfg.getPATH() + cfg.NAME + "/";
         Files.createDirectories(Paths.get(path));
@@ -89,7 +118,7 @@ public class ContractGen {
         Contract training_contract = switch (cfg.TRAINING_SOURCE) {
             case NEW -> {
                 TestCases training_tc = new RISCVIterativeTests(cfg.subsets, cfg.allowed_observations, cfg.TRAINING_NEW_SEED, cfg.THREADS, cfg.TRAINING_NEW_COUNT);
-                Generator training_generator = new ParallelIverilogGenerator(cfg.CORE == CONFIG.PROCESSOR.IBEX ? new IBEX(new ILPUpdater(), training_tc) : new CVA6(new ILPUpdater(), training_tc), cfg.THREADS, cfg.DEBUG, cfg);
+                Generator training_generator = new ParallelIverilogGenerator(createMARCH(cfg, training_tc), cfg.THREADS, cfg.DEBUG, cfg);
                 generate(training_generator, path + "training");
                 yield training_generator.MARCH.getISA().getContract();
             }
@@ -106,7 +135,7 @@ public class ContractGen {
         List<TestResult> eval_results = switch (cfg.EVAL_SOURCE) {
             case NEW -> {
                 TestCases eval_tc = new RISCVIterativeTests(cfg.subsets, cfg.allowed_observations, cfg.EVAL_NEW_SEED, cfg.THREADS, cfg.EVAL_NEW_COUNT);
-                Generator eval_generator = new ParallelIverilogGenerator(cfg.CORE == CONFIG.PROCESSOR.IBEX ? new IBEX(new ILPUpdater(), eval_tc) : new CVA6(new ILPUpdater(), eval_tc), cfg.THREADS, cfg.DEBUG, cfg);
+                Generator eval_generator = new ParallelIverilogGenerator(createMARCH(cfg, eval_tc), cfg.THREADS, cfg.DEBUG, cfg);
                 generate(eval_generator, path + "eval");
                 yield eval_generator.MARCH.getISA().getContract().getTestResults();
             }
@@ -149,7 +178,7 @@ public class ContractGen {
                 }
             } else {
                 if (covered) {
-                    Contract.whyCovers(contract.getCurrentContract(), res).forEach(obs -> {
+                    contract.whyCovers(res).forEach(obs -> {
                         if (fp_counter.containsKey(obs)) {
                             fp_counter.put(obs, fp_counter.get(obs) + 1);
                         } else {
@@ -0,0 +1,300 @@
+package contractgen;
+
+import java.util.*;
+
+/**
+ * Maintains which test results are covered by a contract that is changed one observation at a time.
+ * <p>
+ * An inverted index maps each observation to the test results it occurs in, and each test result counts its chosen
+ * observations. Choosing or dropping an observation therefore only touches the test results of that observation,
+ * while the numbers of uncovered distinguishable and covered indistinguishable test results are kept up to date.
+ */
+public class Coverage {
+
+    /**
+     * The test results by their id.
+     */
+    private final List<TestResult> results;
+    /**
+     * The ids of the test results of each observation.
+     */
+    private final Map<Observation, Ids> index;
+    /**
+     * The chosen observations.
+     */
+    private final Set<Observation> contract = new HashSet<>();
+    /**
+     * The number of chosen observations of each test result.
+     */
+    private int[] chosen = new int[16];
+    /**
+     * The class of equal test results each test result belongs to.
+     */
+    private int[] result_class = new int[16];
+    /**
+     * The classes of equal test results.
+     */
+    private final Map<TestResult, Integer> classes;
+    /**
+     * The number of covered distinguishable test results of each class.
+     */
+    private int[] class_covered = new int[16];
+    /**
+     * The number of classes without a covered distinguishable test result.
+     */
+    private int unmatched_classes = 0;
+    /**
+     * The number of distinguishable test results.
+     */
+    private int distinguishable = 0;
+    /**
+     * The number of distinguishable test results that are not covered.
+     */
+    private int uncovered = 0;
+    /**
+     * The number of indistinguishable test results that are covered.
+     */
+    private int false_positives = 0;
+    /**
+     * Whether the index is shared with other coverages, so no test results can be added.
+     */
+    private boolean shared = false;
+
+    /**
+     * The ids of the test results of an observation.
+     */
+    private static final class Ids {
+        /**
+         * The ids, only the first size entries are used.
+         */
+        private int[] ids = new int[4];
+        /**
+         * The number of ids.
+         */
+        private int size = 0;
+
+        /**
+         * @param id The id to be appended.
+         */
+        private void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Creates the coverage of the empty contract.
+     *
+     * @param testResults The test results.
+     */
+    public Coverage(List<TestResult> testResults) {
+        results = new ArrayList<>();
+        index = new HashMap<>();
+        classes = new HashMap<>();
+        testResults.forEach(this::add);
+    }
+
+    /**
+     * Creates the coverage of the empty contract sharing the index of another coverage, e.g. to evaluate several
+     * contracts on the same test results concurrently. Afterwards, no test results can be added to either of them.
+     *
+     * @param template The coverage whose index is shared.
+     */
+    public Coverage(Coverage template) {
+        template.shared = true;
+        shared = true;
+        results = template.results;
+        index = template.index;
+        classes = template.classes;
+        chosen = new int[results.size()];
+        result_class = template.result_class;
+        class_covered = new int[classes.size()];
+        unmatched_classes = classes.size();
+        distinguishable = template.distinguishable;
+        uncovered = distinguishable;
+    }
+
+    /**
+     * @param testResults The test results.
+     * @param contract    The contract.
+     */
+    public Coverage(List<TestResult> testResults, Set<Observation> contract) {
+        this(testResults);
+        setContract(contract);
+    }
+
+    /**
+     * Adds a test result, which is covered if one of its observations is already chosen.
+     *
+     * @param res The test result.
+     */
+    public void add(TestResult res) {
+        if (shared)
+            throw new IllegalStateException("Cannot add test results to a shared index.");
+        int id = results.size();
+        results.add(res);
+        if (id == chosen.length) {
+            chosen = Arrays.copyOf(chosen, id * 2);
+            result_class = Arrays.copyOf(result_class, id * 2);
+        }
+        Integer cls = classes.get(res);
+        if (cls == null) {
+            cls = classes.size();
+            classes.put(res, cls);
+            if (cls == class_covered.length) class_covered = Arrays.copyOf(class_covered, cls * 2);
+            unmatched_classes++;
+        }
+        result_class[id] = cls;
+        Collection<Observation> observations = res.getPossibleObservations();
+        if (!(observations instanceof Set)) observations = new HashSet<>(observations);
+        for (Observation obs : observations) {
+            index.computeIfAbsent(obs, o -> new Ids()).add(id);
+            if (contract.contains(obs)) chosen[id]++;
+        }
+        if (res.isAdversaryDistinguishable()) distinguishable++;
+        if (chosen[id] > 0) {
+            covered(id);
+        } else if (res.isAdversaryDistinguishable()) {
+            uncovered++;
+        }
+    }
+
+    /**
+     * Adds an observation to the contract.
+     *
+     * @param obs The observation.
+     * @return Whether the observation was not chosen before.
+     */
+    public boolean choose(Observation obs) {
+        if (!contract.add(obs)) return false;
+        Ids ids = index.get(obs);
+        if (ids == null) return true;
+        for (int i = 0; i < ids.size; i++) {
+            int id = ids.ids[i];
+            if (chosen[id]++ == 0) {
+                if (results.get(id).isAdversaryDistinguishable()) uncovered--;
+                covered(id);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes an observation from the contract.
+     *
+     * @param obs The observation.
+     * @return Whether the observation was chosen before.
+     */
+    public boolean drop(Observation obs) {
+        if (!contract.remove(obs)) return false;
+        Ids ids = index.get(obs);
+        if (ids == null) return true;
+        for (int i = 0; i < ids.size; i++) {
+            int id = ids.ids[i];
+            if (--chosen[id] == 0) {
+                if (results.get(id).isAdversaryDistinguishable()) uncovered++;
+                uncovered(id);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Changes the contract, only observations that are added or removed are processed.
+     *
+     * @param contract The new contract.
+     */
+    public void setContract(Set<Observation> contract) {
+        Set<Observation> target = contract == null ? Set.of() : contract;
+        for (Observation obs : new ArrayList<>(this.contract)) {
+            if (!target.contains(obs)) drop(obs);
+        }
+        for (Observation obs : target) {
+            choose(obs);
+        }
+    }
+
+    /**
+     * @param id The id of a now covered test result.
+     */
+    private void covered(int id) {
+        TestResult res = results.get(id);
+        if (res.isAdversaryIndistinguishable()) {
+            false_positives++;
+        } else if (class_covered[result_class[id]]++ == 0) {
+            unmatched_classes--;
+        }
+    }
+
+    /**
+     * @param id The id of a no longer covered test result.
+     */
+    private void uncovered(int id) {
+        TestResult res = results.get(id);
+        if (res.isAdversaryIndistinguishable()) {
+            false_positives--;
+        } else if (--class_covered[result_class[id]] == 0) {
+            unmatched_classes++;
+        }
+    }
+
+    /**
+     * @return The chosen observations.
+     */
+    public Set<Observation> getContract() {
+        return Collections.unmodifiableSet(contract);
+    }
+
+    /**
+     * @param id The id of the test result, i.e. the order in which it was added.
+     * @return Whether the test result is covered.
+     */
+    public boolean covers(int id) {
+        return chosen[id] > 0;
+    }
+
+    /**
+     * Matches {@link Contract#coversAll(List, Set)}: every test result must be equal to a covered distinguishable
+     * test result.
+     *
+     * @return Whether the contract covers all test results.
+     */
+    public boolean coversAll() {
+        return unmatched_classes == 0;
+    }
+
+    /**
+     * @return The number of test results.
+     */
+    public int getTotal() {
+        return results.size();
+    }
+
+    /**
+     * @return The number of distinguishable test results.
+     */
+    public int getDistinguishableCount() {
+        return distinguishable;
+    }
+
+    /**
+     * @return The number of indistinguishable test results.
+     */
+    public int getIndistinguishableCount() {
+        return results.size() - distinguishable;
+    }
+
+    /**
+     * @return The number of distinguishable test results that are not covered.
+     */
+    public int getUncoveredCount() {
+        return uncovered;
+    }
+
+    /**
+     * @return The number of indistinguishable test results that are covered.
+     */
+    public int getFalsePositiveCount() {
+        return false_positives;
+    }
+}
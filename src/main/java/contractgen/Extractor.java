@@ -1,6 +1,9 @@
 package contractgen;
 
 import contractgen.util.Pair;
+import contractgen.util.vcd.Module;
+
+import java.util.List;
 
 /**
  * Extracts test results from a simulation.
@@ -14,4 +17,18 @@ public interface Extractor {
      * @return The extracted test results.
      */
     Pair<TestResult, TestResult> extractResults(String PATH, boolean adversaryDistinguishable, int index);
+
+    /**
+     * @param top                      The top module of a simulation that provides the signals of
+     *                                 {@link #getSignals()}, e.g. sampled without writing a trace.
+     * @param adversaryDistinguishable Whether the adversary was able to distinguish the executions.
+     * @param index                    The index of the current testcase
+     * @return The extracted test results.
+     */
+    Pair<TestResult, TestResult> extractResults(Module top, boolean adversaryDistinguishable, int index);
+
+    /**
+     * @return The hierarchical names of the signals read during extraction.
+     */
+    List<String> getSignals();
 }
@@ -2,11 +2,21 @@ package contractgen;
 
 import contractgen.util.Pair;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * Abstract microarchitecture.
  */
 public abstract class MARCH {
 
+    /**
+     * The verdict of a single test case printed by a multi-instance testbench, e.g. slot_3 FAIL.
+     */
+    private static final Pattern SLOT_VERDICT = Pattern.compile("slot_(\\d+) (FALSE_POSITIVE|FAIL|SUCCESS)");
+
     /**
      * The corresponding instruction set architecture.
      */
@@ -139,6 +149,91 @@ public abstract class MARCH {
      */
     public abstract SIMULATION_RESULT simulate(int id);
 
+    /**
+     * @return The number of test cases simulated together by {@link #simulateBatch(int)}.
+     */
+    public int getBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Writes several test cases on disk to be simulated together.
+     *
+     * @param id        The id of the current thread to avoid filesystem conflicts.
+     * @param testCases The test cases to be written on disk, at most {@link #getBatchSize()}.
+     */
+    public void writeTestCases(int id, List<TestCase> testCases) {
+        if (testCases.size() != 1)
+            throw new IllegalArgumentException("Only a single test case can be simulated at once.");
+        writeTestCase(id, testCases.get(0));
+    }
+
+    /**
+     * Starts the simulation of the previously written test cases.
+     *
+     * @param id The id of the current thread to avoid filesystem conflicts.
+     * @return The result of the simulation of each test case in the order they were written, followed by meaningless
+     * results for unused slots of the batch.
+     */
+    public List<SIMULATION_RESULT> simulateBatch(int id) {
+        return List.of(simulate(id));
+    }
+
+    /**
+     * Extracts the results from a failing test case of a batch.
+     *
+     * @param id       The id of the current thread to avoid filesystem conflicts.
+     * @param slot     The position of the test case within the batch.
+     * @param testCase The test case that failed for further reference.
+     * @return A pair of test results, one for each core, including observations that would allow to distinguish the executions.
+     */
+    public Pair<TestResult, TestResult> extractCTX(int id, int slot, TestCase testCase) {
+        return extractCTX(id, testCase);
+    }
+
+    /**
+     * Extracts the differences of a test case of a batch from the VCD file on disk.
+     *
+     * @param id    The id of the current thread to avoid filesystem conflicts.
+     * @param slot  The position of the test case within the batch.
+     * @param index Index of the test case to allow to associate a test case with this result.
+     * @return A pair of test results, one for each core, including observations that would allow to distinguish the executions.
+     */
+    public Pair<TestResult, TestResult> extractDifferences(int id, int slot, int index) {
+        return extractDifferences(id, index);
+    }
+
+    /**
+     * @param output The console output of a multi-instance testbench.
+     * @param size   The number of slots of the testbench.
+     * @return The result of each slot, slots without a verdict timed out or failed for an unknown reason.
+     */
+    protected static List<SIMULATION_RESULT> parseBatch(String output, int size) {
+        SIMULATION_RESULT[] results = new SIMULATION_RESULT[size];
+        if (output != null) {
+            Matcher matcher = SLOT_VERDICT.matcher(output);
+            while (matcher.find()) {
+                int slot = Integer.parseInt(matcher.group(1));
+                if (slot < size) results[slot] = SIMULATION_RESULT.valueOf(matcher.group(2));
+            }
+        }
+        List<SIMULATION_RESULT> list = new ArrayList<>(size);
+        for (SIMULATION_RESULT result : results) {
+            if (result != null) list.add(result);
+            else list.add(output != null && output.contains("TIMEOUT") ? SIMULATION_RESULT.TIMEOUT : SIMULATION_RESULT.UNKNOWN);
+        }
+        return list;
+    }
+
+    /**
+     * Releases the simulator that is kept between the test cases of a thread, e.g. a native model. Otherwise, every
+     * simulation runs in its own process and nothing needs to be released.
+     *
+     * @param id The id of the current thread to avoid filesystem conflicts.
+     */
+    public void stopSimulation(int id) {
+    }
+
     /**
      * @return The name of the microarchitecture.
      */
@@ -23,4 +23,11 @@ public interface Observation {
      * @return whether this observation is applicable.
      */
     boolean isApplicable();
+
+    /**
+     * @return the dense index of the observation among all observations of its kind or -1 if it has none.
+     */
+    default int getIndex() {
+        return -1;
+    }
 }
@@ -0,0 +1,26 @@
+package contractgen;
+
+/**
+ * The simulator used to compile and simulate a microarchitecture.
+ */
+public enum SIMULATOR {
+    /**
+     * Icarus Verilog, simulating the design converted to Verilog by sv2v.
+     */
+    IVERILOG,
+    /**
+     * Verilator, compiling the design converted to Verilog by sv2v into a native model of the same testbench.
+     */
+    VERILATOR,
+    /**
+     * Verilator, compiling the testbench into a shared library that is simulated within the Java process.
+     */
+    NATIVE;
+
+    /**
+     * @return The name of the simulator as expected by the compile scripts.
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+}
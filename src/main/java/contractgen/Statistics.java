@@ -2,6 +2,7 @@ package contractgen;
 
 import contractgen.riscv.isa.contract.RISCVContract;
 import contractgen.riscv.isa.contract.RISCV_OBSERVATION_TYPE;
+import contractgen.updater.CachingUpdater;
 import contractgen.updater.ILPUpdater;
 
 import java.io.BufferedWriter;
@@ -24,9 +25,10 @@ public class Statistics {
      * @param COUNT                The number of threads to use.
      * @param startingAt           The index at which the statistics generation should resume in case it has been interrupted.
      * @param allowed_observations The set of allowed observations.
+     * @param cache                Whether the contracts are cached on disk, see {@link CachingUpdater}.
      * @throws IOException On filesystem errors.
      */
-    public static void genStatsParallel(String training, String eval, String results, int COUNT, int startingAt, Set<RISCV_OBSERVATION_TYPE> allowed_observations) throws IOException {
+    public static void genStatsParallel(String training, String eval, String results, int COUNT, int startingAt, Set<RISCV_OBSERVATION_TYPE> allowed_observations, boolean cache) throws IOException {
 
         FileWriter fstream = new FileWriter(results, startingAt > 0); //true tells to append data.
         BufferedWriter out = new BufferedWriter(fstream);
@@ -35,9 +37,10 @@ public class Statistics {
         }
         RISCVContract evalset = RISCVContract.fromJSON(new FileReader(eval));
         evalset.restrictObservations(allowed_observations);
+        Coverage evalindex = new Coverage(evalset.getTestResults());
         List<Thread> runners = new ArrayList<>();
         for (int i = 0; i < COUNT; i++) {
-            runners.add(new Thread(new StatisticsRunner(i, COUNT, training, evalset, out, startingAt, allowed_observations), "Runner_" + (i + 1)));
+            runners.add(new Thread(new StatisticsRunner(i, COUNT, training, evalindex, out, startingAt, allowed_observations, cache), "Runner_" + (i + 1)));
         }
         runners.forEach(Thread::start);
         runners.forEach(t -> {
@@ -54,14 +57,15 @@ public class Statistics {
      * @param id                   The id of the runner.
      * @param COUNT                The total number of runners.
      * @param training             The training set.
-     * @param evalset              The eval set.
+     * @param evalindex            The index of the eval set shared by all runners.
      * @param out                  The file to write the output to.
      * @param startingAt           Where to start at in case of an interruption.
      * @param allowed_observations The set of allowed observations.
+     * @param cache                Whether the contracts are cached on disk.
      */
-    private record StatisticsRunner(int id, int COUNT, String training, RISCVContract evalset, BufferedWriter out,
+    private record StatisticsRunner(int id, int COUNT, String training, Coverage evalindex, BufferedWriter out,
                                     int startingAt,
-                                    Set<RISCV_OBSERVATION_TYPE> allowed_observations) implements Runnable {
+                                    Set<RISCV_OBSERVATION_TYPE> allowed_observations, boolean cache) implements Runnable {
         @Override
         public void run() {
             int STEP_SIZE = 2;
@@ -74,11 +78,12 @@ public class Statistics {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            RISCVContract contract = new RISCVContract(new ILPUpdater());
+            RISCVContract contract = new RISCVContract(cache ? new CachingUpdater(new ILPUpdater()) : new ILPUpdater());
             for (int i = 0; i < startingAt; i++) {
                 contract.add(reference.getTestResults().get(i));
             }
             end = end == null ? reference.getTestResults().size() : end;
+            Coverage eval = new Coverage(evalindex);
 
             for (int i = startingAt; i < end; i++) {
                 if (i % STEP_SIZE != 0 || (i / STEP_SIZE) % COUNT != id) {
@@ -93,51 +98,18 @@ public class Statistics {
                 contract.update(true);
                 boolean updated = !Objects.equals(old, contract.getCurrentContract());
                 int size = contract.getCurrentContract().size();
-                int true_positive_self = 0;
-                int true_negative_self = 0;
-                int false_positive_self = 0;
-                int false_negative_self = 0;
-                for (TestResult item : contract.getTestResults()) {
-                    boolean covered = contract.covers(item);
-                    if (item.isAdversaryDistinguishable()) {
-                        if (covered)
-                            true_positive_self++;
-                        else
-                            false_negative_self++;
-                    } else {
-                        if (covered)
-                            false_positive_self++;
-                        else
-                            true_negative_self++;
-                    }
-                }
+                // the coverage is maintained incrementally as the contract changes
+                Coverage self = contract.getCoverage();
+                int false_negative_self = self.getUncoveredCount();
+                int true_positive_self = self.getDistinguishableCount() - false_negative_self;
+                int false_positive_self = self.getFalsePositiveCount();
+                int true_negative_self = self.getIndistinguishableCount() - false_positive_self;
 
-                int true_positive_eval = 0;
-                int true_negative_eval = 0;
-                int false_positive_eval = 0;
-                int false_negative_eval = 0;
-                Map<Observation, Integer> counter = new HashMap<>();
-                for (TestResult item : evalset.getTestResults()) {
-                    boolean covered = contract.covers(item);
-                    if (item.isAdversaryDistinguishable()) {
-                        if (covered)
-                            true_positive_eval++;
-                        else
-                            false_negative_eval++;
-                    } else {
-                        if (covered) {
-                            Contract.whyCovers(contract.getCurrentContract(), item).forEach(obs -> {
-                                if (counter.containsKey(obs)) {
-                                    counter.put(obs, counter.get(obs) + 1);
-                                } else {
-                                    counter.put(obs, 1);
-                                }
-                            });
-                            false_positive_eval++;
-                        } else
-                            true_negative_eval++;
-                    }
-                }
+                eval.setContract(contract.getCurrentContract());
+                int false_negative_eval = eval.getUncoveredCount();
+                int true_positive_eval = eval.getDistinguishableCount() - false_negative_eval;
+                int false_positive_eval = eval.getFalsePositiveCount();
+                int true_negative_eval = eval.getIndistinguishableCount() - false_positive_eval;
                 System.out.print("Progress: " + i + " of " + reference.getTestResults().size() + "\r");
                 StringBuilder result = new StringBuilder();
                 result.append(i).append(";");
@@ -1,5 +1,7 @@
 package contractgen;
 
+import contractgen.util.BitUtils;
+
 import java.util.Collection;
 import java.util.Set;
 
@@ -12,6 +14,10 @@ public abstract class TestResult {
      * A set of observations that would make the execution distinguishable.
      */
     protected Set<Observation> observations;
+    /**
+     * The observations as bitset over their indexes or null if not all observations are indexed.
+     */
+    private transient long[] observationBits;
     /**
      * Whether the adversary was able to distinguish the executions.
      */
@@ -28,6 +34,7 @@ public abstract class TestResult {
      */
     public TestResult(Set<Observation> observations, boolean adversaryDistinguishable, int index) {
         this.observations = observations;
+        this.observationBits = toBits(observations);
         this.adversaryDistinguishable = adversaryDistinguishable;
         this.index = index;
     }
@@ -37,6 +44,49 @@ public abstract class TestResult {
      */
     public abstract Collection<Observation> getPossibleObservations();
 
+    /**
+     * @param observations The new observations that would make the executions distinguishable.
+     */
+    protected void setObservations(Set<Observation> observations) {
+        this.observations = observations;
+        this.observationBits = toBits(observations);
+    }
+
+    /**
+     * @return The observations as bitset over their indexes or null if not all observations are indexed.
+     */
+    public long[] getObservationBits() {
+        return observationBits;
+    }
+
+    /**
+     * @param observation The observation.
+     * @return Whether the observation would make the executions distinguishable.
+     */
+    public boolean hasObservation(Observation observation) {
+        if (observationBits != null && observation.getIndex() >= 0)
+            return BitUtils.get(observationBits, observation.getIndex());
+        return getPossibleObservations().contains(observation);
+    }
+
+    /**
+     * @param observations The observations.
+     * @return The observations as bitset over their indexes or null if not all observations are indexed.
+     */
+    public static long[] toBits(Collection<Observation> observations) {
+        if (observations == null) return null;
+        int max = -1;
+        for (Observation obs : observations) {
+            if (obs.getIndex() < 0) return null;
+            max = Math.max(max, obs.getIndex());
+        }
+        long[] bits = new long[BitUtils.words(max + 1)];
+        for (Observation obs : observations) {
+            BitUtils.set(bits, obs.getIndex());
+        }
+        return bits;
+    }
+
     /**
      * @return Whether the adversary was able to distinguish the executions.
      */
@@ -14,4 +14,27 @@ public interface Updater {
      * @return The computed contract.
      */
     Set<Observation> update(List<TestResult> testResults, Set<Observation> oldContract);
+
+    /**
+     * An optimal updater minimizes the false positives and, among those contracts, the size of the contract.
+     * Results that agree with such a contract cannot change the optimum, so computing it again can be skipped.
+     *
+     * @return Whether the computed contracts are optimal.
+     */
+    default boolean isOptimal() {
+        return false;
+    }
+
+    /**
+     * Discards any state kept from previous updates, e.g. after the test results have been modified or reordered.
+     */
+    default void reset() {
+    }
+
+    /**
+     * @return A string containing useful stats about the updater, one indented line per entry.
+     */
+    default String getStats() {
+        return "";
+    }
 }
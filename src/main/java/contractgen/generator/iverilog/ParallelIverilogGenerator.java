@@ -132,62 +132,77 @@ public class ParallelIverilogGenerator extends Generator {
             AtomicInteger x = new AtomicInteger();
             AtomicLong sum_sim = new AtomicLong();
             AtomicLong sum_ana = new AtomicLong();
-            MARCH.getISA().getTestCases().getIterator(id - 1).forEachRemaining(testCase -> {
-                x.getAndIncrement();
-                long start = 0;
-                long finish = 0;
-                long timeElapsed = 0;
-                if (DEBUG) {
-                    start = System.currentTimeMillis();
-                }
-                MARCH.writeTestCase(id, testCase);
-                SIMULATION_RESULT pass = MARCH.simulate(id);
-                if (DEBUG) {
-                    finish = System.currentTimeMillis();
-                    timeElapsed = finish - start;
-                    sum_sim.addAndGet(timeElapsed);
-                }
-                int i = atomic_i.incrementAndGet();
-                System.out.printf("Current progress: %d of %d.\r", i, MARCH.getISA().getTestCases().getTotalNumber());
-                boolean change = false;
-                switch (pass) {
-                    case SUCCESS, FALSE_POSITIVE -> {
-                        if (DEBUG) {
-                            start = System.currentTimeMillis();
-                        }
-                        Pair<TestResult, TestResult> positive_ctx = MARCH.extractDifferences(id, testCase.getIndex());
-                        if (DEBUG) {
-                            finish = System.currentTimeMillis();
-                            timeElapsed = finish - start;
-                            sum_ana.addAndGet(timeElapsed);
-                        }
-                        synchronized (MARCH.getISA().getContract()) {
-                            MARCH.getISA().getContract().add(positive_ctx.left());
-                            MARCH.getISA().getContract().add(positive_ctx.right());
-                        }
+            Iterator<TestCase> testCases = MARCH.getISA().getTestCases().getIterator(id - 1);
+            List<TestCase> batch = new ArrayList<>(MARCH.getBatchSize());
+            try {
+                while (testCases.hasNext()) {
+                    batch.clear();
+                    while (batch.size() < MARCH.getBatchSize() && testCases.hasNext()) {
+                        batch.add(testCases.next());
                     }
-                    case FAIL -> {
+                    x.getAndAdd(batch.size());
+                    long start = 0;
+                    long finish = 0;
+                    long timeElapsed = 0;
+                    if (DEBUG) {
+                        start = System.currentTimeMillis();
+                    }
+                    MARCH.writeTestCases(id, batch);
+                    List<SIMULATION_RESULT> results = MARCH.simulateBatch(id);
+                    if (DEBUG) {
+                        finish = System.currentTimeMillis();
+                        timeElapsed = finish - start;
+                        sum_sim.addAndGet(timeElapsed);
+                    }
+                    for (int slot = 0; slot < batch.size(); slot++) {
+                        TestCase testCase = batch.get(slot);
+                        SIMULATION_RESULT pass = results.get(slot);
+                        int i = atomic_i.incrementAndGet();
+                        System.out.printf("Current progress: %d of %d.\r", i, MARCH.getISA().getTestCases().getTotalNumber());
+                        boolean change = false;
+                        switch (pass) {
+                            case SUCCESS, FALSE_POSITIVE -> {
+                                if (DEBUG) {
+                                    start = System.currentTimeMillis();
+                                }
+                                Pair<TestResult, TestResult> positive_ctx = MARCH.extractDifferences(id, slot, testCase.getIndex());
+                                if (DEBUG) {
+                                    finish = System.currentTimeMillis();
+                                    timeElapsed = finish - start;
+                                    sum_ana.addAndGet(timeElapsed);
+                                }
+                                synchronized (MARCH.getISA().getContract()) {
+                                    MARCH.getISA().getContract().add(positive_ctx.left());
+                                    MARCH.getISA().getContract().add(positive_ctx.right());
+                                }
+                            }
+                            case FAIL -> {
 
-                        if (DEBUG) {
-                            start = System.currentTimeMillis();
-                        }
-                        Pair<TestResult, TestResult> ctx = MARCH.extractCTX(id, testCase);
-                        if (DEBUG) {
-                            finish = System.currentTimeMillis();
-                            timeElapsed = finish - start;
-                            sum_ana.addAndGet(timeElapsed);
+                                if (DEBUG) {
+                                    start = System.currentTimeMillis();
+                                }
+                                Pair<TestResult, TestResult> ctx = MARCH.extractCTX(id, slot, testCase);
+                                if (DEBUG) {
+                                    finish = System.currentTimeMillis();
+                                    timeElapsed = finish - start;
+                                    sum_ana.addAndGet(timeElapsed);
+                                }
+                                synchronized (MARCH.getISA().getContract()) {
+                                    MARCH.getISA().getContract().add(ctx.left());
+                                    MARCH.getISA().getContract().add(ctx.right());
+                                }
+                            }
+                            case TIMEOUT, UNKNOWN -> {
+                                System.out.println("Problem with test case:" + pass);
+                                System.out.println(testCase);
+                            }
                         }
-                        synchronized (MARCH.getISA().getContract()) {
-                            MARCH.getISA().getContract().add(ctx.left());
-                            MARCH.getISA().getContract().add(ctx.right());
-                        }
-                    }
-                    case TIMEOUT, UNKNOWN -> {
-                        System.out.println("Problem with test case:" + pass);
-                        System.out.println(testCase);
                     }
                 }
-            });
+            } finally {
+                // release the simulator of this runner even if a test case could not be evaluated
+                MARCH.stopSimulation(id);
+            }
             if (DEBUG) {
                 try {
                     stats.write("[" + id + "]\tSimulation:\t" + (sum_sim.get() / x.get()) + "ms\t\t Analysis:\t" + (sum_ana.get() / x.get()) + "ms\n");
@@ -2,16 +2,21 @@ package contractgen.riscv.cva6;
 
 import contractgen.*;
 import contractgen.riscv.isa.RISCV;
+import contractgen.riscv.isa.RISCVInterpreter;
+import contractgen.riscv.isa.extractor.ISAExtractor;
 import contractgen.riscv.isa.extractor.RVFIExtractor;
 import contractgen.util.Pair;
 import contractgen.util.StringUtils;
 import contractgen.util.vcd.VcdFile;
+import contractgen.util.vcd.VcdSplitter;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 import static contractgen.util.FileUtils.copyFileOrFolder;
 import static contractgen.util.FileUtils.replaceString;
@@ -41,12 +46,76 @@ public class CVA6 extends MARCH {
      */
     protected String SIMULATION_PATH = "/home/yosys/output/cva6/simulation/";
 
+    /**
+     * The wires read to determine the failing instruction, all other value changes are skipped while parsing the trace.
+     */
+    private static final Predicate<String> FAIL_SIGNALS = VcdFile.selecting(List.of(
+            "top.atk.atk_equiv_o", "top.control.fetch_1_count", "top.control.fetch_2_count", "top.control.retire_count"
+    ));
+
+    /**
+     * The time limit of a single simulation in seconds.
+     */
+    private static final int TIMEOUT = 10000;
+
+    /**
+     * The number of test cases simulated side by side by the multi-instance testbench.
+     */
+    private final int batch;
+    /**
+     * The simulator the testbench is compiled for.
+     */
+    private final SIMULATOR simulator;
+
     /**
      * @param updater   The updater to be used to update the contract.
      * @param testCases The test cases to be used for generation or evaluation.
      */
     public CVA6(Updater updater, TestCases testCases) {
-        super(new RISCV(updater, testCases), new RVFIExtractor());
+        this(updater, testCases, 1);
+    }
+
+    /**
+     * @param updater   The updater to be used to update the contract.
+     * @param testCases The test cases to be used for generation or evaluation.
+     * @param batch     The number of test cases simulated side by side, each by its own pair of cores in a
+     *                  multi-instance testbench.
+     */
+    public CVA6(Updater updater, TestCases testCases, int batch) {
+        this(updater, testCases, SIMULATOR.IVERILOG, batch);
+    }
+
+    /**
+     * @param updater   The updater to be used to update the contract.
+     * @param testCases The test cases to be used for generation or evaluation.
+     * @param simulator The simulator the testbench is compiled for.
+     * @param batch     The number of test cases simulated side by side, each by its own pair of cores in a
+     *                  multi-instance testbench.
+     */
+    public CVA6(Updater updater, TestCases testCases, SIMULATOR simulator, int batch) {
+        this(updater, testCases, simulator, batch, new RVFIExtractor());
+    }
+
+    /**
+     * @param updater   The updater to be used to update the contract.
+     * @param testCases The test cases to be used for generation or evaluation.
+     * @param simulator The simulator the testbench is compiled for.
+     * @param batch     The number of test cases simulated side by side, each by its own pair of cores in a
+     *                  multi-instance testbench.
+     * @param extractor The extractor of the test results, e.g. an {@link ISAExtractor} using
+     *                  {@link RISCVInterpreter#cva6()} with a check interval to avoid parsing the trace of most
+     *                  simulations.
+     */
+    public CVA6(Updater updater, TestCases testCases, SIMULATOR simulator, int batch, Extractor extractor) {
+        super(new RISCV(updater, testCases), extractor);
+        if (simulator == SIMULATOR.NATIVE)
+            throw new IllegalArgumentException("CVA6 has no native testbench.");
+        if (simulator != SIMULATOR.IVERILOG && batch > 1)
+            throw new IllegalArgumentException("Batches are only supported by Icarus Verilog.");
+        if (batch < 1)
+            throw new IllegalArgumentException("The batch size must be positive.");
+        this.batch = batch;
+        this.simulator = simulator;
     }
 
     @Override
@@ -88,14 +157,14 @@ public class CVA6 extends MARCH {
     private Pair<TestResult, TestResult> extractCTX(String PATH, TestCase testCase) {
         VcdFile vcd;
         try {
-            vcd = new VcdFile(Files.readString(Path.of(PATH + "sim.vcd")));
+            vcd = new VcdFile(Path.of(PATH + "sim.vcd"), FAIL_SIGNALS);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
         int failTime = vcd.getTop().getChild("atk").getWire("atk_equiv_o").getLastChangeTime();
-        int fetch_1 = Integer.parseInt(vcd.getTop().getChild("control").getWire("fetch_1_count").getValueAt(failTime), 2);
-        int fetch_2 = Integer.parseInt(vcd.getTop().getChild("control").getWire("fetch_2_count").getValueAt(failTime), 2);
-        int retire = Integer.parseInt(vcd.getTop().getChild("control").getWire("retire_count").getValueAt(failTime), 2);
+        int fetch_1 = (int) vcd.getTop().getChild("control").getWire("fetch_1_count").getLongAt(failTime);
+        int fetch_2 = (int) vcd.getTop().getChild("control").getWire("fetch_2_count").getLongAt(failTime);
+        int retire = (int) vcd.getTop().getChild("control").getWire("retire_count").getLongAt(failTime);
         int currentGuess = Integer.max(fetch_1, fetch_2);
         while (currentGuess >= retire && simulateSteps(PATH, currentGuess) == SIMULATION_RESULT.FAIL) {
             currentGuess--;
@@ -144,7 +213,7 @@ public class CVA6 extends MARCH {
             throw new RuntimeException(e);
         }
          */
-        String output = runScript("/bin/bash " + BASE_PATH + "compile.sh " + BASE_PATH + " " + COMPILATION_PATH, false, 240);
+        String output = runScript("/bin/bash " + BASE_PATH + "compile.sh " + BASE_PATH + " " + COMPILATION_PATH + " " + batch + " " + simulator.getName(), false, 240);
         System.out.println(output);
         System.out.println("Compilation finished.");
     }
@@ -169,6 +238,14 @@ public class CVA6 extends MARCH {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        writeTestFiles(PATH, testCase);
+    }
+
+    /**
+     * @param PATH     the path to which the test case should be written.
+     * @param testCase The test case whose programs and instruction count are written to disk.
+     */
+    private void writeTestFiles(String PATH, TestCase testCase) {
         testCase.getProgram1().printInit(PATH + "init_1.dat");
         testCase.getProgram1().printInstr(PATH + "memory_1.dat");
         testCase.getProgram2().printInit(PATH + "init_2.dat");
@@ -190,12 +267,88 @@ public class CVA6 extends MARCH {
         return simulate(SIMULATION_PATH + id + "/");
     }
 
+    @Override
+    public int getBatchSize() {
+        return batch;
+    }
+
+    @Override
+    public void writeTestCases(int id, List<TestCase> testCases) {
+        if (batch == 1) {
+            super.writeTestCases(id, testCases);
+            return;
+        }
+        if (testCases.isEmpty() || testCases.size() > batch)
+            throw new IllegalArgumentException("Between 1 and " + batch + " test cases can be simulated at once.");
+        String PATH = SIMULATION_PATH + id + "/";
+        try {
+            copyFileOrFolder(Path.of(COMPILATION_PATH + "ariane_multi").toFile(), Path.of(PATH + "ariane_multi").toFile(), REPLACE_EXISTING);
+            for (int slot = 0; slot < batch; slot++) {
+                Files.createDirectories(Path.of(getSlotPath(PATH, slot)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // unused slots repeat the last test case, their results are ignored
+        for (int slot = 0; slot < batch; slot++) {
+            writeTestFiles(getSlotPath(PATH, slot), testCases.get(Math.min(slot, testCases.size() - 1)));
+        }
+    }
+
+    @Override
+    public List<SIMULATION_RESULT> simulateBatch(int id) {
+        if (batch == 1) return super.simulateBatch(id);
+        String PATH = SIMULATION_PATH + id + "/";
+        String output = runScript(PATH + "ariane_multi", true, TIMEOUT * batch);
+        List<SIMULATION_RESULT> results = parseBatch(output, batch);
+        if (output == null) return results;
+        List<Path> traces = new ArrayList<>(batch);
+        for (int slot = 0; slot < batch; slot++) {
+            traces.add(Path.of(getSlotPath(PATH, slot) + "sim.vcd"));
+        }
+        try {
+            VcdSplitter.split(Path.of(PATH + "sim.vcd"), "slot_", traces);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (results.contains(SIMULATION_RESULT.UNKNOWN)) System.out.println(output);
+        return results;
+    }
+
+    @Override
+    public Pair<TestResult, TestResult> extractCTX(int id, int slot, TestCase testCase) {
+        if (batch == 1) return super.extractCTX(id, slot, testCase);
+        String PATH = getSlotPath(SIMULATION_PATH + id + "/", slot);
+        // the failing instruction is found by simulating the test case on its own
+        try {
+            copyFileOrFolder(Path.of(COMPILATION_PATH + "ariane").toFile(), Path.of(PATH + "ariane").toFile(), REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return extractCTX(PATH, testCase);
+    }
+
+    @Override
+    public Pair<TestResult, TestResult> extractDifferences(int id, int slot, int index) {
+        if (batch == 1) return super.extractDifferences(id, slot, index);
+        return extractDifferences(getSlotPath(SIMULATION_PATH + id + "/", slot), false, index);
+    }
+
+    /**
+     * @param PATH The simulation path of the batch.
+     * @param slot The position of the test case within the batch.
+     * @return The simulation path of the test case.
+     */
+    private static String getSlotPath(String PATH, int slot) {
+        return PATH + "slot_" + slot + "/";
+    }
+
     /**
      * @param PATH The simulation path.
      * @return The result of the simulation.
      */
     private SIMULATION_RESULT simulate(String PATH) {
-        String output = runScript(PATH + "ariane", true, 10000);
+        String output = runScript(PATH + "ariane", true, TIMEOUT);
         if (output == null) return SIMULATION_RESULT.UNKNOWN;
         if (output.contains("FAIL")) return SIMULATION_RESULT.FAIL;
         if (output.contains("FALSE_POSITIVE")) return SIMULATION_RESULT.FALSE_POSITIVE;
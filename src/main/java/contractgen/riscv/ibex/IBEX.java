@@ -2,15 +2,26 @@ package contractgen.riscv.ibex;
 
 import contractgen.*;
 import contractgen.riscv.isa.RISCV;
+import contractgen.riscv.isa.RISCVInterpreter;
+import contractgen.riscv.isa.RISCVProgram;
+import contractgen.riscv.isa.extractor.ISAExtractor;
 import contractgen.riscv.isa.extractor.RVFIExtractor;
+import contractgen.util.NativeModel;
 import contractgen.util.Pair;
 import contractgen.util.StringUtils;
+import contractgen.util.vcd.Module;
 import contractgen.util.vcd.VcdFile;
+import contractgen.util.vcd.VcdSplitter;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 import static contractgen.util.FileUtils.copyFileOrFolder;
 import static contractgen.util.FileUtils.replaceString;
@@ -40,12 +51,105 @@ IBEX extends MARCH {
      */
     protected String SIMULATION_PATH = "/home/yosys/output/ibex/simulation/";
 
+    /**
+     * The wires read to determine the failing instruction, all other value changes are skipped while parsing the trace.
+     */
+    private static final Predicate<String> FAIL_SIGNALS = VcdFile.selecting(List.of(
+            "top.atk.atk_equiv_o", "top.control.fetch_1_count", "top.control.fetch_2_count", "top.control.retire_count"
+    ));
+
+    /**
+     * The modules dumped instead of the whole design if the test results are extracted by an {@link ISAExtractor}. They
+     * contain the signals read to determine the failing instruction and those read by checks and fallbacks.
+     */
+    private static final List<String> ISA_DUMP_MODULES = List.of("ctr", "control", "atk");
+
+    /**
+     * The signals whose changes are recorded by native models, as they mark retirements and the failure.
+     */
+    private static final List<String> NATIVE_TRIGGERS = List.of("top.control.retire_count", "top.atk.atk_equiv_o");
+    /**
+     * The signals recorded by native models in addition to the triggers and the signals of the extractor.
+     */
+    private static final List<String> NATIVE_SIGNALS = List.of("top.control.fetch_1_count", "top.control.fetch_2_count");
+    /**
+     * The time limit of a native simulation in simulation time units, like the timeout of the testbench.
+     */
+    private static final long NATIVE_MAX_TIME = 100000;
+
+    /**
+     * The time limit of a single simulation in seconds.
+     */
+    private static final int TIMEOUT = 30;
+
+    /**
+     * The number of test cases simulated side by side by the multi-instance testbench.
+     */
+    private final int batch;
+    /**
+     * The simulator the testbench is compiled for.
+     */
+    private final SIMULATOR simulator;
+    /**
+     * The native models by their simulation path.
+     */
+    private final Map<String, NativeModel> models = new ConcurrentHashMap<>();
+    /**
+     * The test cases written to each simulation path of the native models.
+     */
+    private final Map<String, TestCase> native_test_cases = new ConcurrentHashMap<>();
+    /**
+     * The records of the latest native simulation of each simulation path.
+     */
+    private final Map<String, Module> native_traces = new ConcurrentHashMap<>();
+
     /**
      * @param updater   The updater to be used to update the contract.
      * @param testCases The test cases to be used for generation or evaluation.
      */
     public IBEX(Updater updater, TestCases testCases) {
-        super(new RISCV(updater, testCases), new RVFIExtractor());
+        this(updater, testCases, 1);
+    }
+
+    /**
+     * @param updater   The updater to be used to update the contract.
+     * @param testCases The test cases to be used for generation or evaluation.
+     * @param batch     The number of test cases simulated side by side, each by its own pair of cores in a
+     *                  multi-instance testbench.
+     */
+    public IBEX(Updater updater, TestCases testCases, int batch) {
+        this(updater, testCases, SIMULATOR.IVERILOG, batch);
+    }
+
+    /**
+     * @param updater   The updater to be used to update the contract.
+     * @param testCases The test cases to be used for generation or evaluation.
+     * @param simulator The simulator the testbench is compiled for.
+     * @param batch     The number of test cases simulated side by side, each by its own pair of cores in a
+     *                  multi-instance testbench.
+     */
+    public IBEX(Updater updater, TestCases testCases, SIMULATOR simulator, int batch) {
+        this(updater, testCases, simulator, batch, new RVFIExtractor());
+    }
+
+    /**
+     * @param updater   The updater to be used to update the contract.
+     * @param testCases The test cases to be used for generation or evaluation.
+     * @param simulator The simulator the testbench is compiled for.
+     * @param batch     The number of test cases simulated side by side, each by its own pair of cores in a
+     *                  multi-instance testbench.
+     * @param extractor The extractor of the test results, e.g. an {@link ISAExtractor} using
+     *                  {@link RISCVInterpreter#ibex()} with a check interval to avoid parsing the trace of most
+     *                  simulations. The testbench then only dumps the modules still read from the trace.
+     */
+    public IBEX(Updater updater, TestCases testCases, SIMULATOR simulator, int batch, Extractor extractor) {
+        super(new RISCV(updater, testCases), extractor);
+        if (simulator != SIMULATOR.IVERILOG && batch > 1)
+            throw new IllegalArgumentException("Batches are only supported by Icarus Verilog.");
+        if (batch < 1)
+            throw new IllegalArgumentException("The batch size must be positive.");
+        this.batch = batch;
+        this.simulator = simulator;
     }
 
     @Override
@@ -84,16 +188,20 @@ IBEX extends MARCH {
      * @return A set of two test results
      */
     private Pair<TestResult, TestResult> extractCTX(String PATH, TestCase testCase) {
-        VcdFile vcd;
-        try {
-            vcd = new VcdFile(Files.readString(Path.of(PATH + "sim.vcd")));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        Module top;
+        if (simulator == SIMULATOR.NATIVE) {
+            top = native_traces.get(PATH);
+        } else {
+            try {
+                top = new VcdFile(Path.of(PATH + "sim.vcd"), FAIL_SIGNALS).getTop();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
-        int failTime = vcd.getTop().getChild("atk").getWire("atk_equiv_o").getLastChangeTime();
-        int fetch_1 = Integer.parseInt(vcd.getTop().getChild("control").getWire("fetch_1_count").getValueAt(failTime), 2);
-        int fetch_2 = Integer.parseInt(vcd.getTop().getChild("control").getWire("fetch_2_count").getValueAt(failTime), 2);
-        int retire = Integer.parseInt(vcd.getTop().getChild("control").getWire("retire_count").getValueAt(failTime), 2);
+        int failTime = top.getChild("atk").getWire("atk_equiv_o").getLastChangeTime();
+        int fetch_1 = (int) top.getChild("control").getWire("fetch_1_count").getLongAt(failTime);
+        int fetch_2 = (int) top.getChild("control").getWire("fetch_2_count").getLongAt(failTime);
+        int retire = (int) top.getChild("control").getWire("retire_count").getLongAt(failTime);
         int currentGuess = Integer.max(fetch_1, fetch_2);
         while (currentGuess >= retire && simulateSteps(PATH, currentGuess) == SIMULATION_RESULT.FAIL) {
             currentGuess--;
@@ -119,11 +227,16 @@ IBEX extends MARCH {
      * @return The differences that would allow a contract to distinguish the two executions.
      */
     private Pair<TestResult, TestResult> extractDifferences(String PATH, boolean adversaryDistinguishable, int index) {
+        if (simulator == SIMULATOR.NATIVE)
+            return getExtractor().extractResults(native_traces.get(PATH), adversaryDistinguishable, index);
         return getExtractor().extractResults(PATH, adversaryDistinguishable, index);
     }
 
     @Override
     public void compile() {
+        // loaded models simulate the previously compiled design
+        models.values().forEach(NativeModel::close);
+        models.clear();
         try {
             copyFileOrFolder(Path.of(TEMPLATE_PATH).toFile(), Path.of(BASE_PATH).toFile(), REPLACE_EXISTING);
         } catch (IOException e) {
@@ -133,11 +246,28 @@ IBEX extends MARCH {
         synchronized (getISA().getContract()) {
             replaceString(BASE_PATH + "verif/ctr.sv", "/* CONTRACT */", getISA().getContract().printContract());
         }
-        String output = runScript("/bin/bash " + BASE_PATH + "compile.sh " + BASE_PATH + " " + COMPILATION_PATH, false, 240);
+        if (getExtractor() instanceof ISAExtractor) {
+            // the trace of most simulations is not read anymore, hence only the modules still needed are dumped
+            replaceString(BASE_PATH + "verif/formal.prop", "$dumpvars();", dumpModules("top"));
+            replaceString(BASE_PATH + "verif/multi.prop", "$dumpvars(0, slot_SLOT);", dumpModules("slot_SLOT"));
+        }
+        String output = runScript("/bin/bash " + BASE_PATH + "compile.sh " + BASE_PATH + " " + COMPILATION_PATH + " " + batch + " " + simulator.getName(), false, 240);
         System.out.println(output);
         System.out.println("Compilation finished.");
     }
 
+    /**
+     * @param top The instance of the testbench.
+     * @return The statements dumping the signals of {@link #ISA_DUMP_MODULES} within the testbench.
+     */
+    private static String dumpModules(String top) {
+        StringBuilder statements = new StringBuilder();
+        for (String module : ISA_DUMP_MODULES) {
+            statements.append("$dumpvars(1, ").append(top).append('.').append(module).append("); ");
+        }
+        return statements.toString().trim();
+    }
+
     @Override
     public void writeTestCase(TestCase testCase) {
         writeTestCase(SIMULATION_PATH, testCase);
@@ -153,11 +283,24 @@ IBEX extends MARCH {
      * @param testCase The test case to be written to disk.
      */
     private void writeTestCase(String PATH, TestCase testCase) {
+        if (simulator == SIMULATOR.NATIVE) {
+            // the programs are loaded into the memories of the native model when simulating
+            native_test_cases.put(PATH, testCase);
+            return;
+        }
         try {
             copyFileOrFolder(Path.of(COMPILATION_PATH + "ibex").toFile(), Path.of(PATH + "ibex").toFile(), REPLACE_EXISTING);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        writeTestFiles(PATH, testCase);
+    }
+
+    /**
+     * @param PATH     the path to which the test case should be written.
+     * @param testCase The test case whose programs and instruction count are written to disk.
+     */
+    private void writeTestFiles(String PATH, TestCase testCase) {
         testCase.getProgram1().printInit(PATH + "init_1.dat");
         testCase.getProgram1().printInstr(PATH + "memory_1.dat");
         testCase.getProgram2().printInit(PATH + "init_2.dat");
@@ -179,6 +322,88 @@ IBEX extends MARCH {
         return simulate(SIMULATION_PATH + id + "/");
     }
 
+    @Override
+    public int getBatchSize() {
+        return batch;
+    }
+
+    @Override
+    public void writeTestCases(int id, List<TestCase> testCases) {
+        if (batch == 1) {
+            super.writeTestCases(id, testCases);
+            return;
+        }
+        if (testCases.isEmpty() || testCases.size() > batch)
+            throw new IllegalArgumentException("Between 1 and " + batch + " test cases can be simulated at once.");
+        String PATH = SIMULATION_PATH + id + "/";
+        try {
+            copyFileOrFolder(Path.of(COMPILATION_PATH + "ibex_multi").toFile(), Path.of(PATH + "ibex_multi").toFile(), REPLACE_EXISTING);
+            for (int slot = 0; slot < batch; slot++) {
+                Files.createDirectories(Path.of(getSlotPath(PATH, slot)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // unused slots repeat the last test case, their results are ignored
+        for (int slot = 0; slot < batch; slot++) {
+            writeTestFiles(getSlotPath(PATH, slot), testCases.get(Math.min(slot, testCases.size() - 1)));
+        }
+    }
+
+    @Override
+    public List<SIMULATION_RESULT> simulateBatch(int id) {
+        if (batch == 1) return super.simulateBatch(id);
+        String PATH = SIMULATION_PATH + id + "/";
+        String output = runScript(PATH + "ibex_multi", true, TIMEOUT * batch);
+        List<SIMULATION_RESULT> results = parseBatch(output, batch);
+        if (output == null) return results;
+        List<Path> traces = new ArrayList<>(batch);
+        for (int slot = 0; slot < batch; slot++) {
+            traces.add(Path.of(getSlotPath(PATH, slot) + "sim.vcd"));
+        }
+        try {
+            VcdSplitter.split(Path.of(PATH + "sim.vcd"), "slot_", traces);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (results.contains(SIMULATION_RESULT.UNKNOWN)) System.out.println(output);
+        return results;
+    }
+
+    @Override
+    public Pair<TestResult, TestResult> extractCTX(int id, int slot, TestCase testCase) {
+        if (batch == 1) return super.extractCTX(id, slot, testCase);
+        String PATH = getSlotPath(SIMULATION_PATH + id + "/", slot);
+        // the failing instruction is found by simulating the test case on its own
+        try {
+            copyFileOrFolder(Path.of(COMPILATION_PATH + "ibex").toFile(), Path.of(PATH + "ibex").toFile(), REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return extractCTX(PATH, testCase);
+    }
+
+    @Override
+    public Pair<TestResult, TestResult> extractDifferences(int id, int slot, int index) {
+        if (batch == 1) return super.extractDifferences(id, slot, index);
+        return extractDifferences(getSlotPath(SIMULATION_PATH + id + "/", slot), false, index);
+    }
+
+    /**
+     * @param PATH The simulation path of the batch.
+     * @param slot The position of the test case within the batch.
+     * @return The simulation path of the test case.
+     */
+    private static String getSlotPath(String PATH, int slot) {
+        return PATH + "slot_" + slot + "/";
+    }
+
+    @Override
+    public void stopSimulation(int id) {
+        NativeModel model = models.remove(SIMULATION_PATH + id + "/");
+        if (model != null) model.close();
+    }
+
     @Override
     public String getName() {
         return "ibex";
@@ -189,8 +414,12 @@ IBEX extends MARCH {
      * @return The result of the simulation.
      */
     private SIMULATION_RESULT simulate(String PATH) {
-        String output = runScript(PATH + "ibex", true, 30);
-        assert output != null;
+        if (simulator == SIMULATOR.NATIVE)
+            return simulateNative(PATH, native_test_cases.get(PATH).getMaxInstructionCount() + 31);
+        String output = runScript(PATH + "ibex", true, TIMEOUT);
+        // the simulator did not answer in time or failed
+        if (output == null)
+            return SIMULATION_RESULT.UNKNOWN;
         if (output.contains("FAIL"))
             return SIMULATION_RESULT.FAIL;
         if (output.contains("FALSE_POSITIVE"))
@@ -203,12 +432,63 @@ IBEX extends MARCH {
         return SIMULATION_RESULT.UNKNOWN;
     }
 
+    /**
+     * Simulates the test case written to a simulation path with its native model, which reads no files and writes no
+     * trace. The recorded signals replace the trace when extracting the test results.
+     *
+     * @param PATH  The simulation path.
+     * @param count The number of instructions after which the testbench finishes.
+     * @return The result of the simulation.
+     */
+    private SIMULATION_RESULT simulateNative(String PATH, int count) {
+        TestCase testCase = native_test_cases.get(PATH);
+        RISCVProgram program1 = (RISCVProgram) testCase.getProgram1();
+        RISCVProgram program2 = (RISCVProgram) testCase.getProgram2();
+        NativeModel model = getModel(PATH);
+        model.reset();
+        model.loadProgram("top.instr_mem_1.mem", 0, program1.encodeInit());
+        model.loadProgram("top.instr_mem_1.mem", 32, program1.encodeInstr());
+        model.loadProgram("top.instr_mem_2.mem", 0, program2.encodeInit());
+        model.loadProgram("top.instr_mem_2.mem", 32, program2.encodeInstr());
+        model.loadProgram("top.control.counters", 0, new int[]{count});
+        int verdict = model.stepUntilDone(NATIVE_MAX_TIME);
+        native_traces.put(PATH, model.getTrace());
+        return switch (verdict) {
+            case NativeModel.FAIL -> SIMULATION_RESULT.FAIL;
+            case NativeModel.FALSE_POSITIVE -> SIMULATION_RESULT.FALSE_POSITIVE;
+            case NativeModel.SUCCESS -> SIMULATION_RESULT.SUCCESS;
+            case NativeModel.TIMEOUT -> SIMULATION_RESULT.TIMEOUT;
+            default -> SIMULATION_RESULT.UNKNOWN;
+        };
+    }
+
+    /**
+     * @param PATH The simulation path.
+     * @return The native model of the path, which is loaded from the current compilation if necessary.
+     */
+    private NativeModel getModel(String PATH) {
+        return models.computeIfAbsent(PATH, path -> {
+            NativeModel model = new NativeModel(Path.of(COMPILATION_PATH + "libibex_model.so"));
+            for (String signal : NATIVE_TRIGGERS) {
+                model.watch(signal, true);
+            }
+            for (String signal : NATIVE_SIGNALS) {
+                model.watch(signal, false);
+            }
+            for (String signal : getExtractor().getSignals()) {
+                if (!NATIVE_TRIGGERS.contains(signal)) model.watch(signal, false);
+            }
+            return model;
+        });
+    }
+
     /**
      * @param PATH  The simulation path.
      * @param steps The number of steps to be simulated.
      * @return The result of the simulation.
      */
     private SIMULATION_RESULT simulateSteps(String PATH, int steps) {
+        if (simulator == SIMULATOR.NATIVE) return simulateNative(PATH, steps);
         try {
             Files.write(Paths.get(PATH + "count.dat"), StringUtils.toHexEncoding((long) steps).getBytes());
         } catch (IOException e) {
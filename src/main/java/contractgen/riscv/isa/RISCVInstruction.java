@@ -6,10 +6,10 @@ import contractgen.util.StringUtils;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A RISC-V instruction.
@@ -30,6 +30,64 @@ public record RISCVInstruction(RISCV_TYPE type, Integer rd, Integer rs1, Integer
     private static final Set<RISCV_TYPE> branches = Set.of(RISCV_TYPE.BEQ, RISCV_TYPE.BNE, RISCV_TYPE.BLT, RISCV_TYPE.BGE, RISCV_TYPE.BLTU, RISCV_TYPE.BGEU);
     private static final Set<RISCV_TYPE> jumps = Set.of(RISCV_TYPE.JAL, RISCV_TYPE.JALR);
 
+    /**
+     * The type of each opcode if it identifies a single type, otherwise null.
+     */
+    private static final RISCV_TYPE[] BY_OPCODE = new RISCV_TYPE[1 << 7];
+    /**
+     * The type of each opcode and funct3 (opcode << 3 | funct3) if they identify a single type, otherwise null.
+     */
+    private static final RISCV_TYPE[] BY_FUNCT3 = new RISCV_TYPE[1 << 10];
+    /**
+     * The types of opcodes and funct3 that need the funct7 to be distinguished, indexed by funct7.
+     */
+    private static final RISCV_TYPE[][] BY_FUNCT7 = new RISCV_TYPE[1 << 10][];
+
+    static {
+        for (int opcode = 0; opcode < (1 << 7); opcode++) {
+            final String op = toBinary(opcode, 7);
+            List<RISCV_TYPE> byOpcode = Arrays.stream(RISCV_TYPE.values()).filter(t -> t.getOpcode().equals(op)).toList();
+            if (byOpcode.size() == 1) {
+                BY_OPCODE[opcode] = byOpcode.get(0);
+                continue;
+            }
+            for (int funct3 = 0; funct3 < (1 << 3) && byOpcode.size() > 1; funct3++) {
+                final String f3 = toBinary(funct3, 3);
+                List<RISCV_TYPE> byFunct3 = byOpcode.stream().filter(t -> t.getFunct3().equals(f3)).toList();
+                if (byFunct3.size() == 1) {
+                    BY_FUNCT3[(opcode << 3) | funct3] = byFunct3.get(0);
+                    continue;
+                }
+                for (int funct7 = 0; funct7 < (1 << 7) && byFunct3.size() > 1; funct7++) {
+                    final String f7 = toBinary(funct7, 7);
+                    List<RISCV_TYPE> byFunct7 = byFunct3.stream().filter(t -> t.getFunct7().equals(f7)).toList();
+                    if (byFunct7.size() == 1) {
+                        if (BY_FUNCT7[(opcode << 3) | funct3] == null) BY_FUNCT7[(opcode << 3) | funct3] = new RISCV_TYPE[1 << 7];
+                        BY_FUNCT7[(opcode << 3) | funct3][funct7] = byFunct7.get(0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of entries in the decode cache, must be a power of two.
+     */
+    private static final int DECODE_CACHE_SIZE = 1 << 12;
+    /**
+     * Recently decoded instructions, directly mapped by their encoding.
+     */
+    private static final DecodedInstruction[] DECODE_CACHE = new DecodedInstruction[DECODE_CACHE_SIZE];
+
+    /**
+     * An entry of the decode cache.
+     *
+     * @param encoding    The encoding of the instruction.
+     * @param instruction The decoded instruction.
+     */
+    private record DecodedInstruction(int encoding, RISCVInstruction instruction) {
+    }
+
     /**
      * @param rd The new destination register.
      * @return   A clone of the instruction with the given destination register.
@@ -64,17 +122,38 @@ public record RISCVInstruction(RISCV_TYPE type, Integer rd, Integer rs1, Integer
 
     @Override
     public String toBinaryEncoding() {
-        return switch (type.getFormat()) {
-            case RTYPE -> type.getFunct7() + encodeRegister(rs2) + encodeRegister(rs1) + type.getFunct3() + encodeRegister(rd) + type.getOpcode();
-            case ITYPE -> encodeImmediate(imm, type.getFormat()) + encodeRegister(rs1) + type.getFunct3() + encodeRegister(rd) + type.getOpcode();
-            case STYPE, BTYPE -> encodeImmediate(imm, type.getFormat()).substring(0, 7) + encodeRegister(rs2) + encodeRegister(rs1) + type.getFunct3() + encodeImmediate(imm, type.getFormat()).substring(7, 12) + type.getOpcode();
-            case UTYPE, JTYPE -> encodeImmediate(imm, type.getFormat()) + encodeRegister(rd) + type.getOpcode();
-        };
+        return StringUtils.toBinaryEncoding(Integer.toUnsignedLong(encode()));
     }
 
     @Override
     public String toHexEncoding() {
-        return StringUtils.toHexEncoding(this.toBinaryEncoding());
+        return StringUtils.toHexEncoding(Integer.toUnsignedLong(encode()));
+    }
+
+    /**
+     * @return The instruction encoded as 32 bit integer.
+     */
+    public int encode() {
+        int encoding = type.getOpcodeValue();
+        switch (type.getFormat()) {
+            case RTYPE -> encoding |= (type.getFunct7Value() << 25) | (rs2 << 20) | (rs1 << 15) | (type.getFunct3Value() << 12) | (rd << 7);
+            case ITYPE -> encoding |= ((int) (imm & 0xFFF) << 20) | (rs1 << 15) | (type.getFunct3Value() << 12) | (rd << 7);
+            case STYPE -> {
+                int i = (int) (imm & 0xFFF);
+                encoding |= ((i >>> 5) << 25) | (rs2 << 20) | (rs1 << 15) | (type.getFunct3Value() << 12) | ((i & 0x1F) << 7);
+            }
+            case BTYPE -> {
+                int i = (int) (imm & 0x1FFF);
+                encoding |= ((i >>> 12) << 31) | (((i >>> 5) & 0x3F) << 25) | (rs2 << 20) | (rs1 << 15) | (type.getFunct3Value() << 12)
+                        | (((i >>> 1) & 0xF) << 8) | (((i >>> 11) & 0x1) << 7);
+            }
+            case UTYPE -> encoding |= ((int) imm.longValue() & 0xFFFFF000) | (rd << 7);
+            case JTYPE -> {
+                int i = (int) (imm & 0x1FFFFF);
+                encoding |= ((i >>> 20) << 31) | (((i >>> 1) & 0x3FF) << 21) | (((i >>> 11) & 0x1) << 20) | (((i >>> 12) & 0xFF) << 12) | (rd << 7);
+            }
+        }
+        return encoding;
     }
 
     /**
@@ -83,36 +162,68 @@ public record RISCVInstruction(RISCV_TYPE type, Integer rd, Integer rs1, Integer
      */
     public static RISCVInstruction parseBinaryString(String instr) {
         if (instr.length() != 32) instr = StringUtils.expandToLength(instr, 32, '0');
-        final String instruction = instr;
-        Set<RISCV_TYPE> candidates = Set.of(RISCV_TYPE.values());
-        candidates = candidates.stream().filter(t -> t.getOpcode().equals(instruction.substring(25))).collect(Collectors.toUnmodifiableSet());
-        if (candidates.size() > 1)
-            candidates = candidates.stream().filter(t -> t.getFunct3().equals(instruction.substring(17, 20))).collect(Collectors.toUnmodifiableSet());
-        if (candidates.size() > 1)
-            candidates = candidates.stream().filter(t -> t.getFunct7().equals(instruction.substring(0, 7))).collect(Collectors.toUnmodifiableSet());
-        if (candidates.size() != 1)
-            throw new IllegalArgumentException("Unknown instruction with op = " + instruction.substring(25) + "funct3 = " + instruction.substring(17, 20) + "funct7 = " + instruction.substring(0, 7));
-        RISCV_TYPE t = candidates.stream().findFirst().orElseThrow();
-
-        int rd = Integer.parseUnsignedInt(instruction.substring(20, 25), 2);
-        int rs1 = Integer.parseUnsignedInt(instruction.substring(12, 17), 2);
-        int rs2 = Integer.parseUnsignedInt(instruction.substring(7, 12), 2);
-        long imm_i = Long.parseLong(instruction.substring(0, 12), 2);
-        long imm_s = Long.parseLong(instruction.substring(0, 7) + instruction.substring(20, 25), 2);
-        long imm_b = Long.parseLong(instruction.charAt(0) + instruction.substring(24, 25) + instruction.substring(1, 7) + instruction.substring(20, 24) + "0", 2);
-        long imm_u = Long.parseLong(instruction.substring(0, 20) + String.format("%012d", 0), 2);
-        long imm_j = Long.parseLong(instruction.charAt(0) + instruction.substring(12, 20) + instruction.charAt(11) + instruction.substring(1, 11) + "0", 2);
+        if (instr.length() != 32)
+            throw new IllegalArgumentException("Instruction " + instr + " exceeds 32 bits.");
+        int encoding = 0;
+        for (int i = 0; i < 32; i++) {
+            char c = instr.charAt(i);
+            if (c != '0' && c != '1')
+                throw new IllegalArgumentException("Invalid digit " + c + " in instruction " + instr + ".");
+            encoding = (encoding << 1) | (c - '0');
+        }
+        return decode(encoding);
+    }
+
+    /**
+     * @param encoding The instruction encoded as 32 bit integer.
+     * @return         The decoded instruction.
+     */
+    public static RISCVInstruction decode(int encoding) {
+        int slot = (encoding ^ (encoding >>> 15)) & (DECODE_CACHE_SIZE - 1);
+        DecodedInstruction cached = DECODE_CACHE[slot];
+        if (cached != null && cached.encoding() == encoding) return cached.instruction();
+        RISCVInstruction instruction = decodeUncached(encoding);
+        DECODE_CACHE[slot] = new DecodedInstruction(encoding, instruction);
+        return instruction;
+    }
 
+    /**
+     * @param encoding The instruction encoded as 32 bit integer.
+     * @return         The decoded instruction.
+     */
+    private static RISCVInstruction decodeUncached(int encoding) {
+        int opcode = encoding & 0x7F;
+        int funct3 = (encoding >>> 12) & 0x7;
+        int funct7 = encoding >>> 25;
+        RISCV_TYPE t = BY_OPCODE[opcode];
+        if (t == null) t = BY_FUNCT3[(opcode << 3) | funct3];
+        if (t == null && BY_FUNCT7[(opcode << 3) | funct3] != null) t = BY_FUNCT7[(opcode << 3) | funct3][funct7];
+        if (t == null)
+            throw new IllegalArgumentException("Unknown instruction with op = " + toBinary(opcode, 7) + "funct3 = " + toBinary(funct3, 3) + "funct7 = " + toBinary(funct7, 7));
+
+        int rd = (encoding >>> 7) & 0x1F;
+        int rs1 = (encoding >>> 15) & 0x1F;
+        int rs2 = (encoding >>> 20) & 0x1F;
+        // all immediates are kept unsigned, exactly as they are encoded
         return switch (t.getFormat()) {
             case RTYPE -> RISCVInstruction.RTYPE(t, rd, rs1, rs2);
-            case ITYPE -> RISCVInstruction.ITYPE(t, rd, rs1, imm_i);
-            case STYPE -> RISCVInstruction.STYPE(t, rs1, rs2, imm_s);
-            case BTYPE -> RISCVInstruction.BTYPE(t, rs1, rs2, imm_b);
-            case UTYPE -> RISCVInstruction.UTYPE(t, rd, imm_u);
-            case JTYPE -> RISCVInstruction.JTYPE(t, rd, imm_j);
+            case ITYPE -> RISCVInstruction.ITYPE(t, rd, rs1, (long) (encoding >>> 20));
+            case STYPE -> RISCVInstruction.STYPE(t, rs1, rs2, (long) (((encoding >>> 25) << 5) | ((encoding >>> 7) & 0x1F)));
+            case BTYPE -> RISCVInstruction.BTYPE(t, rs1, rs2, (long) (((encoding >>> 31) << 12) | (((encoding >>> 7) & 0x1) << 11) | (((encoding >>> 25) & 0x3F) << 5) | (((encoding >>> 8) & 0xF) << 1)));
+            case UTYPE -> RISCVInstruction.UTYPE(t, rd, Integer.toUnsignedLong(encoding & 0xFFFFF000));
+            case JTYPE -> RISCVInstruction.JTYPE(t, rd, (long) (((encoding >>> 31) << 20) | (((encoding >>> 12) & 0xFF) << 12) | (((encoding >>> 20) & 0x1) << 11) | (((encoding >>> 21) & 0x3FF) << 1)));
         };
     }
 
+    /**
+     * @param value  The value.
+     * @param digits The number of digits.
+     * @return       The value encoded in binary with the given number of digits.
+     */
+    private static String toBinary(int value, int digits) {
+        return StringUtils.expandToLength(Integer.toBinaryString(value), digits, '0');
+    }
+
     /**
      * @param instruction The instruction encoded in hexadecimal.
      * @return            The parsed instruction.
@@ -124,26 +235,6 @@ public record RISCVInstruction(RISCV_TYPE type, Integer rd, Integer rs1, Integer
         return RISCVInstruction.parseBinaryString(StringUtils.toBinaryEncoding(instruction));
     }
 
-    private String encodeRegister(Integer register) {
-        return String.format("%5s", Integer.toBinaryString(register)).replace(' ', '0');
-    }
-
-    private String encodeImmediate(Long immediate, RISCV_FORMAT format) {
-        return switch (format) {
-            case RTYPE -> throw new IllegalArgumentException("RTYPE instructions have no immediate.");
-            case ITYPE, STYPE -> String.format("%12s", Long.toBinaryString(immediate)).replace(' ', '0');
-            case BTYPE -> {
-                String s = String.format("%13s", Long.toBinaryString(immediate)).replace(' ', '0');
-                yield s.charAt(0) + s.substring(2, 8) + s.substring(8, 12) + s.charAt(1);
-            }
-            case UTYPE -> String.format("%32s", Long.toBinaryString(immediate)).replace(' ', '0').substring(0, 20);
-            case JTYPE -> {
-                String s = String.format("%21s", Long.toBinaryString(immediate)).replace(' ', '0');
-                yield s.charAt(0) + s.substring(10, 20) + s.charAt(9) + s.substring(1, 9);
-            }
-        };
-    }
-
     public static boolean hasRD(RISCV_TYPE type) {
      return switch (type.getFormat()) {
          case RTYPE, ITYPE, UTYPE, JTYPE -> true;
@@ -0,0 +1,310 @@
+package contractgen.riscv.isa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Executes RV32IM programs on the architectural level and reports every retired instruction with the values the
+ * testbenches expose through RVFI.
+ * <p>
+ * The instruction memory is laid out like the instruction memories of the testbenches: the instructions setting up the
+ * initial registers start at the boot address, the program starts at word {@link #PROGRAM_OFFSET} and all other words
+ * hold NOPs. Like the data memories of the testbenches, which do not retain stores, every load reads the initial
+ * content of the memory.
+ * <p>
+ * The cores differ in how they report memory data through RVFI, which the testbenches mask with the byte enables:
+ * Ibex reports the loaded value and the stored register starting at the lowest byte with unshifted masks, while CVA6
+ * reports the stored data shifted to the bytes of the accessed word and masks shifted alike, but the loaded value
+ * starting at the lowest byte. The cores also differ in misaligned data accesses, which Ibex splits into two accesses
+ * and CVA6 traps on.
+ * <p>
+ * Executions the model does not cover, e.g. unknown instructions, unaligned instruction addresses or misaligned data
+ * accesses on a core trapping on them, are rejected with an {@link IllegalStateException}.
+ */
+public class RISCVInterpreter {
+
+    /**
+     * The number of words of the instruction memory.
+     */
+    public static final int MEMORY_SIZE = 128;
+    /**
+     * The index of the first word of the program within the instruction memory.
+     */
+    public static final int PROGRAM_OFFSET = 32;
+    /**
+     * The encoding of a NOP.
+     */
+    private static final int NOP = RISCVInstruction.NOP().encode();
+    /**
+     * The opcode of register-immediate operations, whose shift amounts are encoded as rs2.
+     */
+    private static final int OP_IMM = 0b0010011;
+
+    /**
+     * The address of the first word of the instruction memory, where execution starts.
+     */
+    private final int boot_address;
+    /**
+     * The content of each word of the data memory by its aligned address.
+     */
+    private final IntUnaryOperator data_memory;
+    /**
+     * Whether misaligned data accesses are executed, otherwise they trap.
+     */
+    private final boolean misaligned_access;
+    /**
+     * Whether memory data is reported in the bytes of the accessed word, otherwise it starts at the lowest byte.
+     */
+    private final boolean word_lanes;
+
+    /**
+     * A retired instruction.
+     *
+     * @param instruction  The instruction.
+     * @param reg_rs1      The value of the first operand, 0 if it has none.
+     * @param reg_rs2      The value of the second operand register, 0 if it reads none.
+     * @param reg_rd       The value written to the destination register, 0 for x0 or if it has none.
+     * @param mem_addr     The accessed address, 0 if the instruction does not access memory.
+     * @param mem_r_data   The loaded value masked by the byte enables, 0 if it is no load.
+     * @param mem_w_data   The stored data masked by the byte enables, 0 if it is no store.
+     * @param branch_taken Whether the instruction is a jump or a taken branch.
+     * @param new_pc       The address of the next instruction.
+     */
+    public record Retirement(RISCVInstruction instruction, int reg_rs1, int reg_rs2, int reg_rd, int mem_addr,
+                             int mem_r_data, int mem_w_data, boolean branch_taken, int new_pc) {
+    }
+
+    /**
+     * @param bootAddress      The address of the first word of the instruction memory, where execution starts.
+     * @param dataMemory       The content of each word of the data memory by its aligned address.
+     * @param misalignedAccess Whether misaligned data accesses are executed, otherwise they trap.
+     * @param wordLanes        Whether memory data is reported in the bytes of the accessed word, otherwise it starts
+     *                         at the lowest byte.
+     */
+    public RISCVInterpreter(int bootAddress, IntUnaryOperator dataMemory, boolean misalignedAccess, boolean wordLanes) {
+        if ((bootAddress & 3) != 0)
+            throw new IllegalArgumentException("The boot address must be word aligned.");
+        this.boot_address = bootAddress;
+        this.data_memory = dataMemory;
+        this.misaligned_access = misalignedAccess;
+        this.word_lanes = wordLanes;
+    }
+
+    /**
+     * @return An interpreter matching the Ibex testbench, which boots at 0x80, whose data memory answers every word
+     * with its address modulo 0x1000 and whose core splits misaligned accesses.
+     */
+    public static RISCVInterpreter ibex() {
+        return new RISCVInterpreter(0x80, address -> Integer.remainderUnsigned(address, 0x1000), true, false);
+    }
+
+    /**
+     * @return An interpreter matching the CVA6 testbench, which boots at 0x1000, whose data memory reads as zero and
+     * whose core traps on misaligned accesses.
+     */
+    public static RISCVInterpreter cva6() {
+        return new RISCVInterpreter(0x1000, address -> 0, false, true);
+    }
+
+    /**
+     * @param init    The instructions setting up the initial registers, see {@link RISCVProgram#encodeInit()}.
+     * @param program The instructions of the program, see {@link RISCVProgram#encodeInstr()}.
+     * @param count   The number of instructions to be retired.
+     * @return The retired instructions in order.
+     * @throws IllegalStateException If the execution leaves the behavior covered by the model.
+     */
+    public List<Retirement> execute(int[] init, int[] program, int count) {
+        int[] memory = new int[MEMORY_SIZE];
+        Arrays.fill(memory, NOP);
+        System.arraycopy(init, 0, memory, 0, Math.min(init.length, PROGRAM_OFFSET));
+        System.arraycopy(program, 0, memory, PROGRAM_OFFSET, Math.min(program.length, MEMORY_SIZE - PROGRAM_OFFSET));
+
+        int[] x = new int[32];
+        int pc = boot_address;
+        List<Retirement> retirements = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            if ((pc & 3) != 0)
+                throw new IllegalStateException("Unaligned instruction address 0x" + Integer.toHexString(pc) + ".");
+            int index = (pc - boot_address) >>> 2;
+            int word = Integer.compareUnsigned(index, MEMORY_SIZE) < 0 ? memory[index] : NOP;
+            RISCVInstruction instr;
+            try {
+                instr = RISCVInstruction.decode(word);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Unknown instruction 0x" + Integer.toHexString(word) + " at 0x" + Integer.toHexString(pc) + ".", e);
+            }
+            Retirement retirement = step(instr, pc, x);
+            if (instr.hasRD() && instr.rd() != 0) x[instr.rd()] = retirement.reg_rd();
+            retirements.add(retirement);
+            pc = retirement.new_pc();
+        }
+        return retirements;
+    }
+
+    /**
+     * @param instr The instruction.
+     * @param pc    The address of the instruction.
+     * @param x     The registers before the instruction, which are not changed.
+     * @return The retirement of the instruction.
+     */
+    private Retirement step(RISCVInstruction instr, int pc, int[] x) {
+        RISCV_TYPE type = instr.type();
+        int rs1 = instr.hasRS1() ? x[instr.rs1()] : 0;
+        // immediate shifts encode their shift amount as rs2 and read no second register
+        boolean reads_rs2 = instr.hasRS2() && type.getOpcodeValue() != OP_IMM;
+        int rs2 = reads_rs2 ? x[instr.rs2()] : 0;
+        int imm = immediate(instr);
+        int shamt = instr.hasRS2() ? instr.rs2() : 0;
+        int next = pc + 4;
+        int rd = 0;
+        int mem_addr = 0;
+        int mem_r_data = 0;
+        int mem_w_data = 0;
+        boolean taken = false;
+        switch (type) {
+            case LUI -> rd = imm;
+            case AUIPC -> rd = pc + imm;
+            case JAL -> {
+                rd = pc + 4;
+                next = pc + imm;
+                taken = true;
+            }
+            case JALR -> {
+                rd = pc + 4;
+                next = (rs1 + imm) & ~1;
+                taken = true;
+            }
+            case BEQ, BNE, BLT, BGE, BLTU, BGEU -> {
+                taken = switch (type) {
+                    case BEQ -> rs1 == rs2;
+                    case BNE -> rs1 != rs2;
+                    case BLT -> rs1 < rs2;
+                    case BGE -> rs1 >= rs2;
+                    case BLTU -> Integer.compareUnsigned(rs1, rs2) < 0;
+                    default -> Integer.compareUnsigned(rs1, rs2) >= 0;
+                };
+                if (taken) next = pc + imm;
+            }
+            case LB, LH, LW, LBU, LHU -> {
+                mem_addr = access(rs1 + imm, width(type), pc);
+                int value = load(mem_addr, width(type));
+                rd = switch (type) {
+                    case LB -> (byte) value;
+                    case LH -> (short) value;
+                    default -> value;
+                };
+                mem_r_data = rd & mask(mem_addr, width(type));
+            }
+            case SB, SH, SW -> {
+                mem_addr = access(rs1 + imm, width(type), pc);
+                mem_w_data = (word_lanes ? rs2 << (8 * (mem_addr & 3)) : rs2) & mask(mem_addr, width(type));
+            }
+            case ADDI -> rd = rs1 + imm;
+            case SLTI -> rd = rs1 < imm ? 1 : 0;
+            case SLTIU -> rd = Integer.compareUnsigned(rs1, imm) < 0 ? 1 : 0;
+            case XORI -> rd = rs1 ^ imm;
+            case ORI -> rd = rs1 | imm;
+            case ANDI -> rd = rs1 & imm;
+            case SLLI -> rd = rs1 << shamt;
+            case SRLI -> rd = rs1 >>> shamt;
+            case SRAI -> rd = rs1 >> shamt;
+            case ADD -> rd = rs1 + rs2;
+            case SUB -> rd = rs1 - rs2;
+            case SLL -> rd = rs1 << rs2;
+            case SLT -> rd = rs1 < rs2 ? 1 : 0;
+            case SLTU -> rd = Integer.compareUnsigned(rs1, rs2) < 0 ? 1 : 0;
+            case XOR -> rd = rs1 ^ rs2;
+            case SRL -> rd = rs1 >>> rs2;
+            case SRA -> rd = rs1 >> rs2;
+            case OR -> rd = rs1 | rs2;
+            case AND -> rd = rs1 & rs2;
+            case MUL -> rd = rs1 * rs2;
+            case MULH -> rd = (int) (((long) rs1 * (long) rs2) >> 32);
+            case MULHSU -> rd = (int) (((long) rs1 * Integer.toUnsignedLong(rs2)) >> 32);
+            case MULHU -> rd = (int) ((Integer.toUnsignedLong(rs1) * Integer.toUnsignedLong(rs2)) >>> 32);
+            case DIV -> rd = rs2 == 0 ? -1 : (rs1 == Integer.MIN_VALUE && rs2 == -1) ? rs1 : rs1 / rs2;
+            case DIVU -> rd = rs2 == 0 ? -1 : Integer.divideUnsigned(rs1, rs2);
+            case REM -> rd = rs2 == 0 ? rs1 : (rs1 == Integer.MIN_VALUE && rs2 == -1) ? 0 : rs1 % rs2;
+            case REMU -> rd = rs2 == 0 ? rs1 : Integer.remainderUnsigned(rs1, rs2);
+        }
+        if (!instr.hasRD() || instr.rd() == 0) rd = 0;
+        return new Retirement(instr, rs1, rs2, rd, mem_addr, mem_r_data, mem_w_data, taken, next);
+    }
+
+    /**
+     * @param address The accessed address.
+     * @param width   The number of accessed bytes.
+     * @param pc      The address of the instruction.
+     * @return The accessed address.
+     * @throws IllegalStateException If the access is misaligned and the core traps on it.
+     */
+    private int access(int address, int width, int pc) {
+        if (!misaligned_access && (address & (width - 1)) != 0)
+            throw new IllegalStateException("Misaligned data access to 0x" + Integer.toHexString(address) + " at 0x" + Integer.toHexString(pc) + ".");
+        return address;
+    }
+
+    /**
+     * @param address The accessed address.
+     * @param width   The number of accessed bytes.
+     * @return The bits of the bytes enabled for the access as reported by the core.
+     */
+    private int mask(int address, int width) {
+        int bytes = width == 4 ? -1 : (1 << (8 * width)) - 1;
+        return word_lanes ? bytes << (8 * (address & 3)) : bytes;
+    }
+
+    /**
+     * @param address The address of the first byte.
+     * @param width   The number of bytes.
+     * @return The bytes read in little endian order without extension.
+     */
+    private int load(int address, int width) {
+        int value = 0;
+        for (int k = 0; k < width; k++) {
+            int byte_address = address + k;
+            int word = data_memory.applyAsInt(byte_address & ~3);
+            value |= ((word >>> (8 * (byte_address & 3))) & 0xFF) << (8 * k);
+        }
+        return value;
+    }
+
+    /**
+     * @param type A memory instruction.
+     * @return The number of accessed bytes.
+     */
+    private static int width(RISCV_TYPE type) {
+        return switch (type) {
+            case LB, LBU, SB -> 1;
+            case LH, LHU, SH -> 2;
+            default -> 4;
+        };
+    }
+
+    /**
+     * @param instr The instruction, whose immediate is kept unsigned as it is encoded.
+     * @return The sign-extended immediate, 0 if it has none.
+     */
+    private static int immediate(RISCVInstruction instr) {
+        if (!instr.hasIMM()) return 0;
+        long imm = instr.imm();
+        return switch (instr.type().getFormat()) {
+            case ITYPE, STYPE -> signExtend(imm, 12);
+            case BTYPE -> signExtend(imm, 13);
+            case JTYPE -> signExtend(imm, 21);
+            case UTYPE -> (int) imm;
+            case RTYPE -> 0;
+        };
+    }
+
+    /**
+     * @param value The value.
+     * @param bits  The width of the value.
+     * @return The value sign-extended from the given width.
+     */
+    private static int signExtend(long value, int bits) {
+        return ((int) value << (32 - bits)) >> (32 - bits);
+    }
+}
@@ -1,6 +1,7 @@
 package contractgen.riscv.isa;
 
 import contractgen.Program;
+import contractgen.util.StringUtils;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -17,6 +18,10 @@ public class RISCVProgram implements Program {
      * The number of architectural registers.
      */
     private static final int NUMBER_REGISTERS = 32;
+    /**
+     * The length of a line in the memory files, eight hexadecimal digits and a line break.
+     */
+    private static final int LINE_LENGTH = 9;
     /**
      * The initial value of each register.
      */
@@ -53,31 +58,66 @@ public class RISCVProgram implements Program {
 
     @Override
     public void printInit(String path) {
-        StringBuilder sb = new StringBuilder();
+        write(path, encodeInit());
+    }
+
+    @Override
+    public void printInstr(String path) {
+        write(path, encodeInstr());
+    }
+
+    /**
+     * Encodes the instructions to instantiate the initial architectural state, e.g. to load them into a simulation
+     * without a file.
+     *
+     * @return The instruction words in the order of {@link #printInit(String)}.
+     */
+    public int[] encodeInit() {
+        int[] words = new int[NUMBER_REGISTERS - 1];
         for (int i = 1; i < NUMBER_REGISTERS; i++) {
             if (registers.containsKey(i) && registers.get(i) != null) {
-                sb.append(RISCVInstruction.ADDI(i, 0, registers.get(i)).toHexEncoding());
+                words[i - 1] = RISCVInstruction.ADDI(i, 0, registers.get(i)).encode();
             } else {
-                sb.append(RISCVInstruction.NOP().toHexEncoding());
+                words[i - 1] = RISCVInstruction.NOP().encode();
             }
-            sb.append("\n");
         }
-        try {
-            Files.write(Paths.get(path), sb.toString().getBytes());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        return words;
+    }
+
+    /**
+     * Encodes the instructions of the program, e.g. to load them into a simulation without a file.
+     *
+     * @return The instruction words in the order of {@link #printInstr(String)}.
+     */
+    public int[] encodeInstr() {
+        int[] words = new int[program.size()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = program.get(i).encode();
         }
+        return words;
     }
 
-    @Override
-    public void printInstr(String path) {
-        StringBuilder sb = new StringBuilder();
-        for (RISCVInstruction instruction : program) {
-            sb.append(instruction.toHexEncoding());
-            sb.append("\n");
+    /**
+     * @param path  The path of the file.
+     * @param words The instruction words, written as one line of hexadecimal digits each.
+     */
+    private static void write(String path, int[] words) {
+        byte[] buffer = new byte[words.length * LINE_LENGTH];
+        int offset = 0;
+        for (int word : words) {
+            offset = StringUtils.writeHex(word, 8, buffer, offset);
+            buffer[offset++] = '\n';
         }
+        write(path, buffer);
+    }
+
+    /**
+     * @param path   The path of the file.
+     * @param buffer The content of the file.
+     */
+    private static void write(String path, byte[] buffer) {
         try {
-            Files.write(Paths.get(path), sb.toString().getBytes());
+            Files.write(Paths.get(path), buffer);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -61,22 +61,16 @@ public enum RISCV_TYPE {
     private final String funct3;
     private final String funct7;
 
+    private final int opcodeValue;
+    private final int funct3Value;
+    private final int funct7Value;
+
     RISCV_TYPE(String name, RISCV_SUBSET subset, RISCV_FORMAT format, String opcode) {
-        this.name = name;
-        this.subset = subset;
-        this.format = format;
-        this.opcode = opcode;
-        this.funct3 = null;
-        this.funct7 = null;
+        this(name, subset, format, opcode, null, null);
     }
 
     RISCV_TYPE(String name, RISCV_SUBSET subset, RISCV_FORMAT format, String opcode, String funct3) {
-        this.name = name;
-        this.subset = subset;
-        this.format = format;
-        this.opcode = opcode;
-        this.funct3 = funct3;
-        this.funct7 = null;
+        this(name, subset, format, opcode, funct3, null);
     }
 
     RISCV_TYPE(String name, RISCV_SUBSET subset, RISCV_FORMAT format, String opcode, String funct3, String funct7) {
@@ -86,6 +80,9 @@ public enum RISCV_TYPE {
         this.opcode = opcode;
         this.funct3 = funct3;
         this.funct7 = funct7;
+        this.opcodeValue = Integer.parseInt(opcode, 2);
+        this.funct3Value = funct3 == null ? 0 : Integer.parseInt(funct3, 2);
+        this.funct7Value = funct7 == null ? 0 : Integer.parseInt(funct7, 2);
     }
 
     public String getOpcode() {
@@ -100,6 +97,27 @@ public enum RISCV_TYPE {
         return funct7;
     }
 
+    /**
+     * @return The opcode as integer.
+     */
+    public int getOpcodeValue() {
+        return opcodeValue;
+    }
+
+    /**
+     * @return The funct3 field as integer, 0 if there is none.
+     */
+    public int getFunct3Value() {
+        return funct3Value;
+    }
+
+    /**
+     * @return The funct7 field as integer, 0 if there is none.
+     */
+    public int getFunct7Value() {
+        return funct7Value;
+    }
+
     public String getName() {
         return name;
     }
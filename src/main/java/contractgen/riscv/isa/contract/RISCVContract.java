@@ -40,6 +40,7 @@ public class RISCVContract extends Contract {
      */
     public void restrictObservations(Set<RISCV_OBSERVATION_TYPE> allowed) {
         getTestResults().forEach(res -> ((RISCVTestResult) res).restrictObservations(allowed));
+        invalidate();
     }
 
     /**
@@ -12,6 +12,16 @@ import contractgen.riscv.isa.RISCV_TYPE;
  */
 public record RISCVObservation(RISCV_TYPE type, RISCV_OBSERVATION_TYPE observation) implements Observation {
 
+    /**
+     * The number of observation types per instruction type.
+     */
+    private static final int OBSERVATION_TYPES = RISCV_OBSERVATION_TYPE.values().length;
+
+    @Override
+    public int getIndex() {
+        return type.ordinal() * OBSERVATION_TYPES + observation.ordinal();
+    }
+
     @Override
     public int getValue() {
         return observation.value;
@@ -2,6 +2,7 @@ package contractgen.riscv.isa.contract;
 
 import contractgen.TestResult;
 import contractgen.Observation;
+import contractgen.util.BitUtils;
 
 import java.util.Comparator;
 import java.util.Objects;
@@ -27,7 +28,7 @@ public class RISCVTestResult extends TestResult {
      * @return Whether any possible observation is allowed.
      */
     public boolean restrictObservations(Set<RISCV_OBSERVATION_TYPE> allowed) {
-        this.observations = this.observations.stream().filter(obs -> allowed.contains(((RISCVObservation) obs).observation())).collect(Collectors.toSet());
+        setObservations(this.observations.stream().filter(obs -> allowed.contains(((RISCVObservation) obs).observation())).collect(Collectors.toSet()));
         return !observations.isEmpty();
     }
 
@@ -36,12 +37,15 @@ public class RISCVTestResult extends TestResult {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         RISCVTestResult that = (RISCVTestResult) o;
+        if (getObservationBits() != null && that.getObservationBits() != null)
+            return BitUtils.equals(getObservationBits(), that.getObservationBits());
         return Objects.equals(observations, that.observations);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(observations);
+        // all RISC-V observations are indexed, so the bitset describes the observations completely
+        return getObservationBits() != null ? BitUtils.hashCode(getObservationBits()) : Objects.hash(observations);
     }
 
     @Override
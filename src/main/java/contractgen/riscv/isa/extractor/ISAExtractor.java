@@ -0,0 +1,267 @@
+package contractgen.riscv.isa.extractor;
+
+import contractgen.Extractor;
+import contractgen.TestResult;
+import contractgen.riscv.isa.RISCVInterpreter;
+import contractgen.util.Pair;
+import contractgen.util.vcd.Module;
+import contractgen.util.vcd.Wire;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts possible contract observations by executing both programs of a test case with a {@link RISCVInterpreter}
+ * instead of parsing the trace of the simulation.
+ * <p>
+ * The programs and the instruction count are read from the files written for the simulation. The retirements of the
+ * interpreter form a trace of the signals read by {@link RVFIExtractor}, in which the n-th retirement happens at time
+ * n, so both extractors derive the observations in the same way. Only executions the interpreter does not cover fall
+ * back to the trace.
+ * <p>
+ * In the differential check mode, the observations of every n-th test case are also extracted from the trace and
+ * mismatches are reported. The interpreter models the testbench only as far as it was checked, hence the check is off
+ * by default but required when adopting the extractor for a core or testbench: use a check interval until no
+ * mismatches are reported on a representative set of test cases and keep a coarse interval afterwards to notice
+ * changes of the testbench.
+ */
+public class ISAExtractor implements Extractor {
+
+    /**
+     * The interpreter executing the programs.
+     */
+    private final RISCVInterpreter interpreter;
+    /**
+     * Every how many test cases the observations are compared to those of the trace, 0 to never compare them.
+     */
+    private final int check_interval;
+    /**
+     * The extractor reading the trace for checks and fallbacks.
+     */
+    private final RVFIExtractor rvfi = new RVFIExtractor();
+
+    /**
+     * The number of test cases compared to their trace.
+     */
+    private final AtomicInteger checks = new AtomicInteger();
+    /**
+     * The number of test cases whose observations differ from those of their trace.
+     */
+    private final AtomicInteger mismatches = new AtomicInteger();
+    /**
+     * The number of test cases extracted from their trace because the interpreter does not cover them.
+     */
+    private final AtomicInteger fallbacks = new AtomicInteger();
+
+    /**
+     * Creates an extractor without differential checks, which is only sound for a testbench it was checked against.
+     *
+     * @param interpreter The interpreter executing the programs, matching the simulated testbench.
+     */
+    public ISAExtractor(RISCVInterpreter interpreter) {
+        this(interpreter, 0);
+    }
+
+    /**
+     * @param interpreter   The interpreter executing the programs, matching the simulated testbench.
+     * @param checkInterval Every how many test cases the observations are compared to those extracted from the trace,
+     *                      0 to never compare them.
+     */
+    public ISAExtractor(RISCVInterpreter interpreter, int checkInterval) {
+        if (checkInterval < 0)
+            throw new IllegalArgumentException("The check interval must not be negative.");
+        this.interpreter = interpreter;
+        this.check_interval = checkInterval;
+    }
+
+    @Override
+    public Pair<TestResult, TestResult> extractResults(String PATH, boolean adversaryDistinguishable, int index) {
+        int count;
+        int[] init_1;
+        int[] program_1;
+        int[] init_2;
+        int[] program_2;
+        try {
+            count = (int) Long.parseLong(Files.readString(Path.of(PATH + "count.dat")).trim(), 16);
+            init_1 = readWords(PATH + "init_1.dat");
+            program_1 = readWords(PATH + "memory_1.dat");
+            init_2 = readWords(PATH + "init_2.dat");
+            program_2 = readWords(PATH + "memory_2.dat");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        List<RISCVInterpreter.Retirement> execution_1;
+        List<RISCVInterpreter.Retirement> execution_2;
+        // only executions the interpreter does not cover fall back to the trace, any other failure is a bug
+        try {
+            execution_1 = interpreter.execute(init_1, program_1, count);
+            execution_2 = interpreter.execute(init_2, program_2, count);
+        } catch (IllegalStateException e) {
+            fallbacks.incrementAndGet();
+            return rvfi.extractResults(PATH, adversaryDistinguishable, index);
+        }
+        Pair<TestResult, TestResult> results = rvfi.extractResults(toTrace(execution_1, execution_2), adversaryDistinguishable, index);
+        if (check_interval > 0 && index % check_interval == 0) {
+            checks.incrementAndGet();
+            Pair<TestResult, TestResult> expected = rvfi.extractResults(PATH, adversaryDistinguishable, index);
+            if (!sameObservations(results.left(), expected.left()) || !sameObservations(results.right(), expected.right())) {
+                mismatches.incrementAndGet();
+                System.out.println("The observations of test case " + index + " differ from its trace " + PATH + "sim.vcd:\n" +
+                        "\tInterpreter: " + results.left().getPossibleObservations() + " / " + results.right().getPossibleObservations() + "\n" +
+                        "\tTrace: " + expected.left().getPossibleObservations() + " / " + expected.right().getPossibleObservations());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Test results of traces recorded without files, e.g. by a native model, are extracted like by
+     * {@link RVFIExtractor}.
+     */
+    @Override
+    public Pair<TestResult, TestResult> extractResults(Module top, boolean adversaryDistinguishable, int index) {
+        return rvfi.extractResults(top, adversaryDistinguishable, index);
+    }
+
+    @Override
+    public List<String> getSignals() {
+        return rvfi.getSignals();
+    }
+
+    /**
+     * @param init_1                   The instructions setting up the initial registers of the first execution.
+     * @param program_1                The program of the first execution.
+     * @param init_2                   The instructions setting up the initial registers of the second execution.
+     * @param program_2                The program of the second execution.
+     * @param count                    The number of retired instructions of each execution.
+     * @param adversaryDistinguishable Whether the adversary was able to distinguish the executions.
+     * @param index                    The index of the current testcase
+     * @return The extracted test results.
+     * @throws IllegalStateException If an execution leaves the behavior covered by the interpreter.
+     */
+    public Pair<TestResult, TestResult> extractResults(int[] init_1, int[] program_1, int[] init_2, int[] program_2, int count, boolean adversaryDistinguishable, int index) {
+        List<RISCVInterpreter.Retirement> execution_1 = interpreter.execute(init_1, program_1, count);
+        List<RISCVInterpreter.Retirement> execution_2 = interpreter.execute(init_2, program_2, count);
+        return rvfi.extractResults(toTrace(execution_1, execution_2), adversaryDistinguishable, index);
+    }
+
+    /**
+     * @return The number of test cases compared to their trace.
+     */
+    public int getChecks() {
+        return checks.get();
+    }
+
+    /**
+     * @return The number of test cases whose observations differ from those of their trace.
+     */
+    public int getMismatches() {
+        return mismatches.get();
+    }
+
+    /**
+     * @return The number of test cases extracted from their trace because the interpreter does not cover them.
+     */
+    public int getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * Builds the signals read by {@link RVFIExtractor}. Retirement n happens at time n, while time 0 holds no valid
+     * instruction like the start of a simulation.
+     *
+     * @param execution_1 The retirements of the first execution.
+     * @param execution_2 The retirements of the second execution.
+     * @return The top module of the trace.
+     */
+    private static Module toTrace(List<RISCVInterpreter.Retirement> execution_1, List<RISCVInterpreter.Retirement> execution_2) {
+        Module top = new Module(null, "top");
+        Module control = new Module(top, "control");
+        Module ctr = new Module(top, "ctr");
+        top.addChild(control);
+        top.addChild(ctr);
+        Wire retire_count = new Wire("retire_count", "retire_count", 32);
+        control.addWire(retire_count);
+        for (int n = 0; n <= execution_1.size(); n++) {
+            retire_count.addValue(n, n);
+        }
+        addExecution(ctr, execution_1, "_1");
+        addExecution(ctr, execution_2, "_2");
+        return top;
+    }
+
+    /**
+     * @param ctr       The module of the compared signals.
+     * @param execution The retirements of one execution.
+     * @param suffix    The suffix of the signals of the execution.
+     */
+    private static void addExecution(Module ctr, List<RISCVInterpreter.Retirement> execution, String suffix) {
+        Wire instr = addWire(ctr, "instr" + suffix + "_i", 32);
+        Wire reg_rs1 = addWire(ctr, "reg_rs1" + suffix, 32);
+        Wire reg_rs2 = addWire(ctr, "reg_rs2" + suffix, 32);
+        Wire reg_rd = addWire(ctr, "reg_rd" + suffix, 32);
+        Wire mem_addr = addWire(ctr, "mem_addr" + suffix, 32);
+        Wire mem_r_data = addWire(ctr, "mem_r_data" + suffix, 32);
+        Wire mem_w_data = addWire(ctr, "mem_w_data" + suffix, 32);
+        Wire is_aligned = addWire(ctr, "is_aligned" + suffix, 1);
+        Wire is_half_aligned = addWire(ctr, "is_half_aligned" + suffix, 1);
+        Wire is_branch = addWire(ctr, "is_branch" + suffix, 1);
+        Wire branch_taken = addWire(ctr, "branch_taken" + suffix, 1);
+        Wire new_pc = addWire(ctr, "new_pc" + suffix, 32);
+        // an all-zero word is no instruction, so the initial state is no valid predecessor
+        instr.addValue(0, 0);
+        for (int n = 1; n <= execution.size(); n++) {
+            RISCVInterpreter.Retirement retirement = execution.get(n - 1);
+            instr.addValue(n, retirement.instruction().encode());
+            reg_rs1.addValue(n, retirement.reg_rs1());
+            reg_rs2.addValue(n, retirement.reg_rs2());
+            reg_rd.addValue(n, retirement.reg_rd());
+            mem_addr.addValue(n, retirement.mem_addr());
+            mem_r_data.addValue(n, retirement.mem_r_data());
+            mem_w_data.addValue(n, retirement.mem_w_data());
+            is_aligned.addValue(n, (retirement.mem_addr() & 3) == 0 ? 1 : 0);
+            is_half_aligned.addValue(n, (retirement.mem_addr() & 3) != 3 ? 1 : 0);
+            is_branch.addValue(n, retirement.instruction().isCONTROL() ? 1 : 0);
+            branch_taken.addValue(n, retirement.branch_taken() ? 1 : 0);
+            new_pc.addValue(n, retirement.new_pc());
+        }
+    }
+
+    /**
+     * @param module The module.
+     * @param name   The name of the wire.
+     * @param width  The width of the wire.
+     * @return The wire added to the module.
+     */
+    private static Wire addWire(Module module, String name, int width) {
+        Wire wire = new Wire(name, name, width);
+        module.addWire(wire);
+        return wire;
+    }
+
+    /**
+     * @param path A memory file with one hexadecimal word per line.
+     * @return The words.
+     * @throws IOException On filesystem errors.
+     */
+    private static int[] readWords(String path) throws IOException {
+        return Files.readAllLines(Path.of(path)).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .mapToInt(line -> Integer.parseUnsignedInt(line, 16))
+                .toArray();
+    }
+
+    /**
+     * @param actual   The test result extracted by the interpreter.
+     * @param expected The test result extracted from the trace.
+     * @return Whether both have the same observations.
+     */
+    private static boolean sameObservations(TestResult actual, TestResult expected) {
+        return new HashSet<>(actual.getPossibleObservations()).equals(new HashSet<>(expected.getPossibleObservations()));
+    }
+}
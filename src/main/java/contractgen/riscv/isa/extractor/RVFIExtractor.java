@@ -7,113 +7,174 @@ import contractgen.riscv.isa.contract.RISCVObservation;
 import contractgen.riscv.isa.contract.RISCVTestResult;
 import contractgen.riscv.isa.contract.RISCV_OBSERVATION_TYPE;
 import contractgen.util.Pair;
-import contractgen.util.StringUtils;
 import contractgen.util.vcd.Module;
 import contractgen.util.vcd.VcdFile;
 import contractgen.util.vcd.Wire;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
 
 /**
  * Extracts possible contract observations from the RVFI intere.
  */
 public class RVFIExtractor implements Extractor {
+
+    /**
+     * The wires read during extraction.
+     */
+    private static final List<String> SIGNAL_NAMES = List.of(
+            "top.control.retire_count",
+            "top.ctr.instr_1_i", "top.ctr.instr_2_i",
+            "top.ctr.reg_rs1_1", "top.ctr.reg_rs1_2", "top.ctr.reg_rs2_1", "top.ctr.reg_rs2_2", "top.ctr.reg_rd_1", "top.ctr.reg_rd_2",
+            "top.ctr.mem_addr_1", "top.ctr.mem_addr_2", "top.ctr.mem_r_data_1", "top.ctr.mem_r_data_2", "top.ctr.mem_w_data_1", "top.ctr.mem_w_data_2",
+            "top.ctr.is_aligned_1", "top.ctr.is_aligned_2", "top.ctr.is_half_aligned_1", "top.ctr.is_half_aligned_2",
+            "top.ctr.is_branch_1", "top.ctr.is_branch_2", "top.ctr.branch_taken_1", "top.ctr.branch_taken_2", "top.ctr.new_pc_1", "top.ctr.new_pc_2"
+    );
+
+    /**
+     * Selects the wires read during extraction, all other value changes are skipped while parsing the trace.
+     */
+    private static final Predicate<String> SIGNALS = VcdFile.selecting(SIGNAL_NAMES);
+
+    /**
+     * The number of previous retirements inspected for dependencies.
+     */
+    private static final int MAX_DISTANCE = 4;
+
+    /**
+     * A retirement of both executions.
+     *
+     * @param time    the retire time.
+     * @param instr_1 the first instruction.
+     * @param instr_2 the second instruction.
+     */
+    private record Retirement(int time, RISCVInstruction instr_1, RISCVInstruction instr_2) {
+    }
+
     @Override
     public Pair<TestResult, TestResult> extractResults(String PATH, boolean adversaryDistinguishable, int index) {
         VcdFile vcd;
         try {
-            vcd = new VcdFile(Files.readString(Path.of(PATH + "sim.vcd")));
+            vcd = new VcdFile(Path.of(PATH + "sim.vcd"), SIGNALS);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        Set<RISCVObservation> obs1 = new HashSet<>();
-        Set<RISCVObservation> obs2 = new HashSet<>();
-        Wire retire_count = vcd.getTop().getChild("control").getWire("retire_count");
-        int currentCount = Integer.parseInt(retire_count.getValueAt(retire_count.getLastChangeTime()), 2);
-        while (currentCount > 0) {
-            Integer retire_time = retire_count.getFirstTimeValue(StringUtils.toBinaryEncoding((long) currentCount));
-
-            if (!compareInstructions(vcd, retire_time, obs1, obs2)) {
-                // invalid instruction
-                currentCount--;
-                continue;
-            }
-            RISCVInstruction instr_1 = RISCVInstruction.parseBinaryString(vcd.getTop().getChild("ctr").getWire("instr_1_i").getValueAt(retire_time));
-            RISCVInstruction instr_2 = RISCVInstruction.parseBinaryString(vcd.getTop().getChild("ctr").getWire("instr_2_i").getValueAt(retire_time));
+        return extractResults(vcd.getTop(), adversaryDistinguishable, index);
+    }
 
-            compareRegisters(vcd, retire_time, instr_1, instr_2, obs1, obs2);
-            compareMemory(vcd, retire_time, instr_1, instr_2, obs1, obs2);
-            compareBranch(vcd, retire_time, instr_1, instr_2, obs1, obs2);
+    @Override
+    public List<String> getSignals() {
+        return SIGNAL_NAMES;
+    }
 
-            for (int distance = 1; distance <= 4; distance++) {
-                compareDependencies(vcd, retire_count, currentCount, distance, instr_1, instr_2, obs1, obs2);
+    @Override
+    public Pair<TestResult, TestResult> extractResults(Module top, boolean adversaryDistinguishable, int index) {
+        Set<RISCVObservation> obs1 = new HashSet<>();
+        Set<RISCVObservation> obs2 = new HashSet<>();
+        Module ctr = top.getChild("ctr");
+        Wire retire_count = top.getChild("control").getWire("retire_count");
+        int lastCount = (int) retire_count.getLongAt(retire_count.getLastChangeTime());
+        // the last retirements in a ring buffer, null if they are invalid
+        Retirement[] recent = new Retirement[MAX_DISTANCE];
+        for (int currentCount = 0; currentCount <= lastCount; currentCount++) {
+            Retirement current;
+            if (currentCount == 0) {
+                // the initial state is only inspected as predecessor
+                try {
+                    current = decode(ctr, retire_count.getFirstTimeValue(0));
+                } catch (Exception e) {
+                    current = null;
+                }
+            } else {
+                current = decode(ctr, retire_count.getFirstTimeValue(currentCount));
+                if (current != null) {
+                    compareInstructions(current, obs1, obs2);
+                    compareRegisters(ctr, current, obs1, obs2);
+                    compareMemory(ctr, current, obs1, obs2);
+                    compareBranch(ctr, current, obs1, obs2);
+                    for (int distance = 1; distance <= Math.min(MAX_DISTANCE, currentCount); distance++) {
+                        Retirement previous = recent[(currentCount - distance) % MAX_DISTANCE];
+                        if (previous != null) {
+                            compareDependencies(current, previous, distance, obs1, obs2);
+                        }
+                    }
+                }
             }
-            currentCount--;
+            recent[currentCount % MAX_DISTANCE] = current;
         }
         return new Pair<>(new RISCVTestResult(obs1, adversaryDistinguishable, index * 2), new RISCVTestResult(obs2, adversaryDistinguishable, (index * 2) + 1));
     }
 
     /**
-     * @param vcd          The VCD file.
-     * @param retire_count the wire counting retirements.
-     * @param currentCount the instruction currently being analyzed.
-     * @param distance     the distance currently under inspection.
-     * @param instr_1      the first instruction.
-     * @param instr_2      the second instruction.
-     * @param obs1         the current set of observations for execution one.
-     * @param obs2         the current set of observations for execution two.
+     * @param ctr         the module containing the compared signals.
+     * @param retire_time the retire time, may be null.
+     * @return the retired instructions or null if there is no valid instruction at this time.
      */
-    private void compareDependencies(VcdFile vcd, Wire retire_count, Integer currentCount, int distance, RISCVInstruction instr_1, RISCVInstruction instr_2, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
+    private Retirement decode(Module ctr, Integer retire_time) {
         try {
-            // TODO when applicable
-            Integer previous_retire_time = retire_count.getFirstTimeValue(StringUtils.toBinaryEncoding((long) currentCount - distance));
-            RISCVInstruction previous_instr_1 = RISCVInstruction.parseBinaryString(vcd.getTop().getChild("ctr").getWire("instr_1_i").getValueAt(previous_retire_time));
-            RISCVInstruction previous_instr_2 = RISCVInstruction.parseBinaryString(vcd.getTop().getChild("ctr").getWire("instr_2_i").getValueAt(previous_retire_time));
+            RISCVInstruction instr_1 = RISCVInstruction.decode((int) ctr.getWire("instr_1_i").getLongAt(retire_time));
+            RISCVInstruction instr_2 = RISCVInstruction.decode((int) ctr.getWire("instr_2_i").getLongAt(retire_time));
+            return new Retirement(retire_time, instr_1, instr_2);
+        } catch (Exception e) {
+            // invalid instruction
+            return null;
+        }
+    }
 
-            if ((instr_1.hasRS1() && instr_2.hasRS1()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && Objects.equals(instr_1.rs1(), previous_instr_1.rd()) && !Objects.equals(instr_2.rs1(), previous_instr_2.rd())) {
-                obs1.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.RAW_RS1, distance)));
-                obs2.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.RAW_RS1, distance)));
-            }
-            if ((instr_1.hasRS1() && instr_2.hasRS1()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && !Objects.equals(instr_1.rs1(), previous_instr_1.rd()) && Objects.equals(instr_2.rs1(), previous_instr_2.rd())) {
-                obs1.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.RAW_RS1, distance)));
-                obs2.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.RAW_RS1, distance)));
-            }
-            if ((instr_1.hasRS2() && instr_2.hasRS2()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && Objects.equals(instr_1.rs2(), previous_instr_1.rd()) && !Objects.equals(instr_2.rs2(), previous_instr_2.rd())) {
-                obs1.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.RAW_RS2, distance)));
-                obs2.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.RAW_RS2, distance)));
-            }
-            if ((instr_1.hasRS2() && instr_2.hasRS2()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && !Objects.equals(instr_1.rs2(), previous_instr_1.rd()) && Objects.equals(instr_2.rs2(), previous_instr_2.rd())) {
-                obs1.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.RAW_RS2, distance)));
-                obs2.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.RAW_RS2, distance)));
-            }
-            if ((instr_1.hasRD() && instr_2.hasRD()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && Objects.equals(instr_1.rd(), previous_instr_1.rd()) && !Objects.equals(instr_2.rd(), previous_instr_2.rd())) {
-                obs1.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.WAW, distance)));
-                obs2.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.WAW, distance)));
-            }
-            if ((instr_1.hasRD() && instr_2.hasRD()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && !Objects.equals(instr_1.rd(), previous_instr_1.rd()) && Objects.equals(instr_2.rd(), previous_instr_2.rd())) {
-                obs1.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.WAW, distance)));
-                obs2.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.WAW, distance)));
-            }
-        } catch (Exception ignored) {
+    /**
+     * @param current  the current retirement.
+     * @param previous the retirement distance steps earlier.
+     * @param distance the distance currently under inspection.
+     * @param obs1     the current set of observations for execution one.
+     * @param obs2     the current set of observations for execution two.
+     */
+    private void compareDependencies(Retirement current, Retirement previous, int distance, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
+        RISCVInstruction instr_1 = current.instr_1();
+        RISCVInstruction instr_2 = current.instr_2();
+        RISCVInstruction previous_instr_1 = previous.instr_1();
+        RISCVInstruction previous_instr_2 = previous.instr_2();
 
+        if ((instr_1.hasRS1() && instr_2.hasRS1()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && Objects.equals(instr_1.rs1(), previous_instr_1.rd()) && !Objects.equals(instr_2.rs1(), previous_instr_2.rd())) {
+            obs1.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.RAW_RS1, distance)));
+            obs2.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.RAW_RS1, distance)));
+        }
+        if ((instr_1.hasRS1() && instr_2.hasRS1()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && !Objects.equals(instr_1.rs1(), previous_instr_1.rd()) && Objects.equals(instr_2.rs1(), previous_instr_2.rd())) {
+            obs1.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.RAW_RS1, distance)));
+            obs2.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.RAW_RS1, distance)));
+        }
+        if ((instr_1.hasRS2() && instr_2.hasRS2()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && Objects.equals(instr_1.rs2(), previous_instr_1.rd()) && !Objects.equals(instr_2.rs2(), previous_instr_2.rd())) {
+            obs1.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.RAW_RS2, distance)));
+            obs2.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.RAW_RS2, distance)));
+        }
+        if ((instr_1.hasRS2() && instr_2.hasRS2()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && !Objects.equals(instr_1.rs2(), previous_instr_1.rd()) && Objects.equals(instr_2.rs2(), previous_instr_2.rd())) {
+            obs1.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.RAW_RS2, distance)));
+            obs2.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.RAW_RS2, distance)));
+        }
+        if ((instr_1.hasRD() && instr_2.hasRD()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && Objects.equals(instr_1.rd(), previous_instr_1.rd()) && !Objects.equals(instr_2.rd(), previous_instr_2.rd())) {
+            obs1.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.WAW, distance)));
+            obs2.add(new RISCVObservation(previous_instr_1.type(), getDependencyObservationType(DEPENDENCY.WAW, distance)));
+        }
+        if ((instr_1.hasRD() && instr_2.hasRD()) && (previous_instr_1.hasRD() && previous_instr_2.hasRD()) && !Objects.equals(instr_1.rd(), previous_instr_1.rd()) && Objects.equals(instr_2.rd(), previous_instr_2.rd())) {
+            obs1.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.WAW, distance)));
+            obs2.add(new RISCVObservation(previous_instr_2.type(), getDependencyObservationType(DEPENDENCY.WAW, distance)));
         }
     }
 
     /**
-     * @param vcd         the VCD file.
-     * @param retire_time the retire time of the given instructions.
-     * @param instr_1     the first instruction.
-     * @param instr_2     the second instruction.
-     * @param obs1        the current set of observations for execution one.
-     * @param obs2        the current set of observations for execution two.
+     * @param ctr     the module containing the compared signals.
+     * @param current the current retirement.
+     * @param obs1    the current set of observations for execution one.
+     * @param obs2    the current set of observations for execution two.
      */
-    private void compareBranch(VcdFile vcd, Integer retire_time, RISCVInstruction instr_1, RISCVInstruction instr_2, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
-        Module ctr = vcd.getTop().getChild("ctr");
+    private void compareBranch(Module ctr, Retirement current, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
+        int retire_time = current.time();
+        RISCVInstruction instr_1 = current.instr_1();
+        RISCVInstruction instr_2 = current.instr_2();
         String is_branch_1 = ctr.getWire("is_branch_1").getValueAt(retire_time);
         String is_branch_2 = ctr.getWire("is_branch_2").getValueAt(retire_time);
         String branch_taken_1 = ctr.getWire("branch_taken_1").getValueAt(retire_time);
@@ -136,15 +197,15 @@ public class RVFIExtractor implements Extractor {
     }
 
     /**
-     * @param vcd         the VCD file.
-     * @param retire_time the retire time of the given instructions.
-     * @param instr_1     the first instruction.
-     * @param instr_2     the second instruction.
-     * @param obs1        the current set of observations for execution one.
-     * @param obs2        the current set of observations for execution two.
+     * @param ctr     the module containing the compared signals.
+     * @param current the current retirement.
+     * @param obs1    the current set of observations for execution one.
+     * @param obs2    the current set of observations for execution two.
      */
-    private void compareMemory(VcdFile vcd, Integer retire_time, RISCVInstruction instr_1, RISCVInstruction instr_2, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
-        Module ctr = vcd.getTop().getChild("ctr");
+    private void compareMemory(Module ctr, Retirement current, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
+        int retire_time = current.time();
+        RISCVInstruction instr_1 = current.instr_1();
+        RISCVInstruction instr_2 = current.instr_2();
         String mem_addr_1 = ctr.getWire("mem_addr_1").getValueAt(retire_time);
         String mem_addr_2 = ctr.getWire("mem_addr_2").getValueAt(retire_time);
         String mem_r_data_1 = ctr.getWire("mem_r_data_1").getValueAt(retire_time);
@@ -179,15 +240,15 @@ public class RVFIExtractor implements Extractor {
     }
 
     /**
-     * @param vcd         the VCD file.
-     * @param retire_time the retire time of the given instructions.
-     * @param instr_1     the first instruction.
-     * @param instr_2     the second instruction.
-     * @param obs1        the current set of observations for execution one.
-     * @param obs2        the current set of observations for execution two.
+     * @param ctr     the module containing the compared signals.
+     * @param current the current retirement.
+     * @param obs1    the current set of observations for execution one.
+     * @param obs2    the current set of observations for execution two.
      */
-    private void compareRegisters(VcdFile vcd, Integer retire_time, RISCVInstruction instr_1, RISCVInstruction instr_2, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
-        Module ctr = vcd.getTop().getChild("ctr");
+    private void compareRegisters(Module ctr, Retirement current, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
+        int retire_time = current.time();
+        RISCVInstruction instr_1 = current.instr_1();
+        RISCVInstruction instr_2 = current.instr_2();
         String reg_rs1_1 = ctr.getWire("reg_rs1_1").getValueAt(retire_time);
         String reg_rs1_2 = ctr.getWire("reg_rs1_2").getValueAt(retire_time);
         String reg_rs2_1 = ctr.getWire("reg_rs2_1").getValueAt(retire_time);
@@ -210,44 +271,34 @@ public class RVFIExtractor implements Extractor {
     }
 
     /**
-     * @param vcd         the VCD file.
-     * @param retire_time the retire time of the given instructions.
-     * @param obs1        the current set of observations for execution one.
-     * @param obs2        the current set of observations for execution two.
-     * @return whether any error occurred.
+     * @param current the current retirement.
+     * @param obs1    the current set of observations for execution one.
+     * @param obs2    the current set of observations for execution two.
      */
-    private boolean compareInstructions(VcdFile vcd, Integer retire_time, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
-        RISCVInstruction instr_1;
-        RISCVInstruction instr_2;
-        try {
-            instr_1 = RISCVInstruction.parseBinaryString(vcd.getTop().getChild("ctr").getWire("instr_1_i").getValueAt(retire_time));
-            instr_2 = RISCVInstruction.parseBinaryString(vcd.getTop().getChild("ctr").getWire("instr_2_i").getValueAt(retire_time));
+    private void compareInstructions(Retirement current, Set<RISCVObservation> obs1, Set<RISCVObservation> obs2) {
+        RISCVInstruction instr_1 = current.instr_1();
+        RISCVInstruction instr_2 = current.instr_2();
 
-            if (!Objects.equals(instr_1.type(), instr_2.type())) {
-                obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.OPCODE));
-                obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.OPCODE));
-            }
+        if (!Objects.equals(instr_1.type(), instr_2.type())) {
+            obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.OPCODE));
+            obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.OPCODE));
+        }
 
-            if ((instr_1.hasRD() && instr_2.hasRD()) && !Objects.equals(instr_1.rd(), instr_2.rd())) {
-                obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.RD));
-                obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.RD));
-            }
-            if ((instr_1.hasRS1() && instr_2.hasRS1()) && !Objects.equals(instr_1.rs1(), instr_2.rs1())) {
-                obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.RS1));
-                obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.RS1));
-            }
-            if ((instr_1.hasRS2() && instr_2.hasRS2()) && !Objects.equals(instr_1.rs2(), instr_2.rs2())) {
-                obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.RS2));
-                obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.RS2));
-            }
-            if ((instr_1.hasIMM() && instr_2.hasIMM()) && !Objects.equals(instr_1.imm(), instr_2.imm())) {
-                obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.IMM));
-                obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.IMM));
-            }
-            return true;
-        } catch (Exception e) {
-            // invalid instruction
-            return false;
+        if ((instr_1.hasRD() && instr_2.hasRD()) && !Objects.equals(instr_1.rd(), instr_2.rd())) {
+            obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.RD));
+            obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.RD));
+        }
+        if ((instr_1.hasRS1() && instr_2.hasRS1()) && !Objects.equals(instr_1.rs1(), instr_2.rs1())) {
+            obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.RS1));
+            obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.RS1));
+        }
+        if ((instr_1.hasRS2() && instr_2.hasRS2()) && !Objects.equals(instr_1.rs2(), instr_2.rs2())) {
+            obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.RS2));
+            obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.RS2));
+        }
+        if ((instr_1.hasIMM() && instr_2.hasIMM()) && !Objects.equals(instr_1.imm(), instr_2.imm())) {
+            obs1.add(new RISCVObservation(instr_1.type(), RISCV_OBSERVATION_TYPE.IMM));
+            obs2.add(new RISCVObservation(instr_2.type(), RISCV_OBSERVATION_TYPE.IMM));
         }
     }
 
@@ -36,7 +36,7 @@ public class SimplePipelineMARCH extends SimpleMARCH {
     public Pair<TestResult, TestResult> extractCTX(TestCase testCase) {
         VcdFile ctx;
         try {
-            ctx = new VcdFile(Files.readString(Path.of(BASE_PATH + "/syn/run/verif/engine_0/trace.vcd")));
+            ctx = new VcdFile(Path.of(BASE_PATH + "/syn/run/verif/engine_0/trace.vcd"));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
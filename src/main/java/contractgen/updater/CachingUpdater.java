@@ -0,0 +1,373 @@
+package contractgen.updater;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import contractgen.Observation;
+import contractgen.TestResult;
+import contractgen.Updater;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Caches the contracts computed by another updater on disk, so the same problem is not solved again, not even
+ * across runs.
+ * <p>
+ * A problem is identified by a fingerprint of the multiset of its test results, i.e. independent of their order, and
+ * of the type and parameters of the updater. If the fingerprint is cached with a contract proven optimal, the stored
+ * contract is returned immediately. A contract that was not proven optimal, e.g. because a time limit was hit, is only
+ * passed to the updater as hint, so the updater still gets the chance to improve it. Otherwise, the contract of the
+ * longest cached prefix of the test results is passed as hint, e.g. when an interrupted computation is resumed.
+ * <p>
+ * The cache holds a bounded number of contracts. Reading a contract marks it as recently used and the least recently
+ * used contracts are evicted once the bound is exceeded.
+ * <p>
+ * The fingerprints are maintained incrementally as long as the same list of test results is passed.
+ */
+public class CachingUpdater implements Updater {
+
+    /**
+     * The directory used by default to store the cached contracts.
+     */
+    public static final String DEFAULT_DIRECTORY = "results/cache/";
+    /**
+     * The number of contracts kept by default.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    /**
+     * The file extension of cached contracts.
+     */
+    private static final String EXTENSION = ".json";
+
+    /**
+     * The updater computing the contracts.
+     */
+    private final Updater updater;
+    /**
+     * The directory storing the cached contracts.
+     */
+    private final String directory;
+    /**
+     * The number of contracts kept in the directory.
+     */
+    private final int max_entries;
+
+    /**
+     * The type and parameters of the updater as part of every key.
+     */
+    private transient String updater_key;
+    /**
+     * The list of test results the fingerprints were computed for.
+     */
+    private transient List<TestResult> results;
+    /**
+     * The number of test results the fingerprints were computed for.
+     */
+    private transient int processed;
+    /**
+     * The lanes of the fingerprint of each prefix of the test results, index i belongs to the first i results.
+     */
+    private transient long[] prefix_low, prefix_high;
+    /**
+     * Whether the cache was already searched for a prefix of the current list of test results.
+     */
+    private transient boolean searched_prefix;
+    /**
+     * Whether the latest contract was taken from the cache.
+     */
+    private transient boolean hit;
+    /**
+     * The number of updates answered from the cache.
+     */
+    private transient int hits;
+    /**
+     * The number of updates hinted by the contract of a cached prefix.
+     */
+    private transient int prefix_hits;
+    /**
+     * The number of updates passed to the updater.
+     */
+    private transient int misses;
+    /**
+     * The number of contracts evicted from the cache.
+     */
+    private transient int evictions;
+
+    /**
+     * A cached contract.
+     *
+     * @param results  The number of test results the contract was computed for.
+     * @param optimal  Whether the updater proved the contract optimal.
+     * @param contract The observations of the contract by their string representation.
+     */
+    private record Entry(int results, boolean optimal, List<String> contract) {
+    }
+
+    /**
+     * @param updater The updater computing the contracts.
+     */
+    public CachingUpdater(Updater updater) {
+        this(updater, DEFAULT_DIRECTORY, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param updater    The updater computing the contracts.
+     * @param directory  The directory storing the cached contracts.
+     * @param maxEntries The number of contracts kept in the directory.
+     */
+    public CachingUpdater(Updater updater, String directory, int maxEntries) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("The cache must hold at least one contract.");
+        this.updater = updater;
+        this.directory = directory;
+        this.max_entries = maxEntries;
+    }
+
+    /**
+     * @return Whether the latest contract is proven optimal, which holds for every contract taken from the cache.
+     */
+    @Override
+    public synchronized boolean isOptimal() {
+        return hit || updater.isOptimal();
+    }
+
+    @Override
+    public synchronized void reset() {
+        updater.reset();
+        results = null;
+    }
+
+    @Override
+    public synchronized String getStats() {
+        return "\tCache Hits: " + hits + "\n" +
+                "\tCache Prefix Hits: " + prefix_hits + "\n" +
+                "\tCache Misses: " + misses + "\n" +
+                "\tCache Evictions: " + evictions + "\n" +
+                updater.getStats();
+    }
+
+    @Override
+    public synchronized Set<Observation> update(List<TestResult> testResults, Set<Observation> oldContract) {
+        if (results != testResults || testResults.size() < processed) {
+            results = testResults;
+            processed = 0;
+            prefix_low = new long[testResults.size() + 1];
+            prefix_high = new long[testResults.size() + 1];
+            searched_prefix = false;
+        }
+        extendFingerprints(testResults);
+        String key = key(testResults.size());
+
+        Entry cached = read(key);
+        Set<Observation> contract = cached == null || cached.results() != testResults.size() ? null : resolve(testResults, cached);
+        if (contract != null && cached.optimal()) {
+            hit = true;
+            hits++;
+            return contract;
+        }
+        hit = false;
+        misses++;
+
+        // a contract that is not proven optimal is only a hint
+        Set<Observation> hint = contract != null ? contract : oldContract;
+        if (contract == null && !searched_prefix) {
+            searched_prefix = true;
+            Set<Observation> prefix_contract = longestPrefix(testResults);
+            if (prefix_contract != null) {
+                hint = prefix_contract;
+                prefix_hits++;
+            }
+        }
+        contract = updater.update(testResults, hint);
+        if (contract != null) {
+            List<String> observations = contract.stream().map(Observation::toString).sorted().toList();
+            write(key, new Entry(testResults.size(), updater.isOptimal(), observations));
+            evict();
+        }
+        return contract;
+    }
+
+    /**
+     * Computes the fingerprints of the prefixes ending in test results appended since the last update.
+     * <p>
+     * The fingerprint of a multiset is the lane-wise sum of the digests of its elements, hence it does not depend on
+     * the order of the test results and is extended by adding the digest of each new test result.
+     *
+     * @param testResults The test results.
+     */
+    private void extendFingerprints(List<TestResult> testResults) {
+        if (testResults.size() >= prefix_low.length) {
+            int capacity = Math.max(testResults.size() + 1, prefix_low.length * 2);
+            prefix_low = Arrays.copyOf(prefix_low, capacity);
+            prefix_high = Arrays.copyOf(prefix_high, capacity);
+        }
+        MessageDigest digest = sha256();
+        for (; processed < testResults.size(); processed++) {
+            byte[] canonical = canonical(testResults.get(processed)).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer element = ByteBuffer.wrap(digest.digest(canonical));
+            prefix_low[processed + 1] = prefix_low[processed] + element.getLong();
+            prefix_high[processed + 1] = prefix_high[processed] + element.getLong();
+        }
+    }
+
+    /**
+     * @param res The test result.
+     * @return A string identifying the test result independent of the order of its observations and its index.
+     */
+    private static String canonical(TestResult res) {
+        return (res.isAdversaryDistinguishable() ? "D" : "I") +
+                res.getPossibleObservations().stream().map(Observation::toString).sorted().collect(Collectors.joining("\u0000", "\u0000", ""));
+    }
+
+    /**
+     * @param size The length of the prefix of the current test results.
+     * @return The key of the prefix for the updater, which includes its type and parameters.
+     */
+    private String key(int size) {
+        if (updater_key == null) updater_key = updater.getClass().getName() + "\n" + new Gson().toJson(updater) + "\n";
+        String problem = updater_key + size + ":" + Long.toHexString(prefix_low[size]) + ":" + Long.toHexString(prefix_high[size]);
+        return HexFormat.of().formatHex(sha256().digest(problem.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param testResults The test results.
+     * @return The contract of the longest cached proper prefix of the test results or null if none is cached.
+     */
+    private Set<Observation> longestPrefix(List<TestResult> testResults) {
+        Set<String> keys;
+        try (Stream<Path> files = Files.list(Path.of(directory))) {
+            keys = files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(EXTENSION))
+                    .map(name -> name.substring(0, name.length() - EXTENSION.length()))
+                    .collect(Collectors.toSet());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.out.println("Failed to list the contract cache: " + e.getMessage());
+            return null;
+        }
+        if (keys.isEmpty()) return null;
+        for (int size = testResults.size() - 1; size > 0; size--) {
+            String key = key(size);
+            if (!keys.contains(key)) continue;
+            Entry cached = read(key);
+            Set<Observation> contract = cached == null || cached.results() != size ? null : resolve(testResults, cached);
+            if (contract != null) return contract;
+        }
+        return null;
+    }
+
+    /**
+     * @param testResults The test results.
+     * @param cached      The cached contract.
+     * @return The observations of the cached contract or null if one of them is not an observation of the test results.
+     */
+    private static Set<Observation> resolve(List<TestResult> testResults, Entry cached) {
+        Map<String, Observation> observations = new HashMap<>();
+        for (TestResult res : testResults) {
+            for (Observation obs : res.getPossibleObservations()) {
+                observations.putIfAbsent(obs.toString(), obs);
+            }
+        }
+        Set<Observation> contract = new HashSet<>();
+        for (String name : cached.contract()) {
+            Observation obs = observations.get(name);
+            if (obs == null) return null;
+            contract.add(obs);
+        }
+        return contract;
+    }
+
+    /**
+     * Reads a cached contract and marks it as recently used.
+     *
+     * @param key The key of the problem.
+     * @return The cached contract or null if none is cached or it cannot be read.
+     */
+    private Entry read(String key) {
+        Path file = Path.of(directory, key + EXTENSION);
+        if (!Files.exists(file)) return null;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            Entry entry = new Gson().fromJson(reader, Entry.class);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (NoSuchFileException e) {
+            // evicted concurrently
+            return null;
+        } catch (IOException | JsonParseException e) {
+            System.out.println("Failed to read cached contract " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores a contract, concurrent writers of the same key are resolved by atomically replacing the file.
+     *
+     * @param key   The key of the problem.
+     * @param entry The contract to be cached.
+     */
+    private void write(String key, Entry entry) {
+        try {
+            Path dir = Files.createDirectories(Path.of(directory));
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp)) {
+                new Gson().toJson(entry, writer);
+            }
+            Files.move(tmp, dir.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to cache contract " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the least recently used contracts beyond the number of contracts kept.
+     */
+    private void evict() {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(Path.of(directory))) {
+            files = listing.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).toList();
+        } catch (IOException e) {
+            System.out.println("Failed to list the contract cache: " + e.getMessage());
+            return;
+        }
+        if (files.size() <= max_entries) return;
+        Map<Path, Long> used = new HashMap<>();
+        for (Path file : files) {
+            try {
+                used.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                // evicted concurrently
+                used.put(file, Long.MIN_VALUE);
+            }
+        }
+        List<Path> oldest = files.stream().sorted(Comparator.comparingLong(used::get)).limit(files.size() - max_entries).toList();
+        for (Path file : oldest) {
+            try {
+                if (Files.deleteIfExists(file)) evictions++;
+            } catch (IOException e) {
+                System.out.println("Failed to evict cached contract " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return A new SHA-256 digest.
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package contractgen.updater;
+
+import contractgen.Observation;
+import contractgen.TestResult;
+import contractgen.Updater;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Greedily computes a contract covering all distinguishable test results, i.e. a weighted set cover.
+ * <p>
+ * In each step, the observation covering the most distinguishable test results that are not yet covered relative to
+ * the number of indistinguishable test results it would newly cover is added. Afterwards, observations that are no
+ * longer needed are removed again. Observations are scored lazily through a priority queue over an inverted index,
+ * hence the runtime is almost linear in the total number of observations of all test results.
+ * <p>
+ * The computation stops with a {@link CancellationException} once its thread is interrupted, e.g. by a
+ * {@link PortfolioUpdater} at its deadline.
+ */
+public class GreedyUpdater implements Updater {
+
+    @Override
+    public Set<Observation> update(List<TestResult> testResults, Set<Observation> ignored) {
+        return cover(testResults, Set.of());
+    }
+
+    /**
+     * Extends a contract until it covers all distinguishable test results.
+     *
+     * @param testResults The test results to be considered in the computation.
+     * @param initial     The observations to start from, observations of no test result are dropped.
+     * @return The computed contract.
+     */
+    static Set<Observation> cover(List<TestResult> testResults, Set<Observation> initial) {
+        return new Cover(testResults).run(initial);
+    }
+
+    /**
+     * @throws CancellationException If the current thread was interrupted, which clears its interrupt status.
+     */
+    static void checkInterrupted() {
+        if (Thread.interrupted())
+            throw new CancellationException("The computation of the contract was interrupted.");
+    }
+
+    /**
+     * An observation with its score at the time it was queued.
+     *
+     * @param atom  The index of the observation.
+     * @param score The score.
+     */
+    private record Candidate(int atom, double score) {
+    }
+
+    /**
+     * The state of a single computation.
+     */
+    private static class Cover {
+        /**
+         * The observations by their index.
+         */
+        private final List<Observation> atoms = new ArrayList<>();
+        /**
+         * The observations of each distinguishable test result.
+         */
+        private final int[][] negative_atoms;
+        /**
+         * The observations of each indistinguishable test result.
+         */
+        private final int[][] positive_atoms;
+        /**
+         * The distinguishable test results of each observation.
+         */
+        private final int[][] atom_negatives;
+        /**
+         * The indistinguishable test results of each observation.
+         */
+        private final int[][] atom_positives;
+        /**
+         * The number of chosen observations of each distinguishable test result.
+         */
+        private final int[] negative_covered;
+        /**
+         * The number of chosen observations of each indistinguishable test result.
+         */
+        private final int[] positive_covered;
+        /**
+         * The number of distinguishable test results each observation would newly cover.
+         */
+        private final int[] gain;
+        /**
+         * The number of indistinguishable test results each observation would newly cover.
+         */
+        private final int[] cost;
+        /**
+         * Whether each observation is part of the contract.
+         */
+        private final boolean[] chosen;
+        /**
+         * The observations in the order they were chosen.
+         */
+        private final List<Integer> order = new ArrayList<>();
+        /**
+         * The candidates, each observation is queued again whenever its score increases.
+         */
+        private final PriorityQueue<Candidate> queue = new PriorityQueue<>(
+                Comparator.comparingDouble(Candidate::score).reversed().thenComparingInt(Candidate::atom));
+
+        /**
+         * Builds the inverted index.
+         *
+         * @param testResults The test results to be considered in the computation.
+         */
+        private Cover(List<TestResult> testResults) {
+            Map<Observation, Integer> index = new HashMap<>();
+            List<int[]> negatives = new ArrayList<>();
+            List<int[]> positives = new ArrayList<>();
+            for (TestResult res : testResults) {
+                checkInterrupted();
+                Collection<Observation> observations = res.getPossibleObservations();
+                if (observations.isEmpty()) continue;
+                int[] ids = observations.stream().distinct().mapToInt(obs -> index.computeIfAbsent(obs, o -> {
+                    atoms.add(o);
+                    return atoms.size() - 1;
+                })).toArray();
+                (res.isAdversaryDistinguishable() ? negatives : positives).add(ids);
+            }
+            negative_atoms = negatives.toArray(new int[0][]);
+            positive_atoms = positives.toArray(new int[0][]);
+            atom_negatives = invert(negative_atoms, atoms.size());
+            atom_positives = invert(positive_atoms, atoms.size());
+            negative_covered = new int[negative_atoms.length];
+            positive_covered = new int[positive_atoms.length];
+            gain = new int[atoms.size()];
+            cost = new int[atoms.size()];
+            chosen = new boolean[atoms.size()];
+            for (int atom = 0; atom < atoms.size(); atom++) {
+                gain[atom] = atom_negatives[atom].length;
+                cost[atom] = atom_positives[atom].length;
+            }
+        }
+
+        /**
+         * @param rows  The observations of each test result.
+         * @param atoms The number of observations.
+         * @return The test results of each observation.
+         */
+        private static int[][] invert(int[][] rows, int atoms) {
+            int[] count = new int[atoms];
+            for (int[] row : rows) {
+                for (int atom : row) count[atom]++;
+            }
+            int[][] inverted = new int[atoms][];
+            for (int atom = 0; atom < atoms; atom++) {
+                inverted[atom] = new int[count[atom]];
+                count[atom] = 0;
+            }
+            for (int i = 0; i < rows.length; i++) {
+                for (int atom : rows[i]) inverted[atom][count[atom]++] = i;
+            }
+            return inverted;
+        }
+
+        /**
+         * @param atom The index of the observation.
+         * @return The number of newly covered distinguishable test results per newly covered indistinguishable test
+         * result, where the observation itself counts as one.
+         */
+        private double score(int atom) {
+            return gain[atom] / (cost[atom] + 1.0);
+        }
+
+        /**
+         * @param initial The observations to start from.
+         * @return The computed contract.
+         */
+        private Set<Observation> run(Set<Observation> initial) {
+            for (int atom = 0; atom < atoms.size(); atom++) {
+                if (initial.contains(atoms.get(atom))) choose(atom);
+            }
+            queue.clear();
+            for (int atom = 0; atom < atoms.size(); atom++) {
+                if (!chosen[atom] && gain[atom] > 0) queue.add(new Candidate(atom, score(atom)));
+            }
+            while (!queue.isEmpty()) {
+                checkInterrupted();
+                Candidate candidate = queue.poll();
+                int atom = candidate.atom();
+                if (chosen[atom] || gain[atom] == 0) continue;
+                double score = score(atom);
+                if (score < candidate.score()) {
+                    // the queued score is outdated, all other queued scores are upper bounds
+                    queue.add(new Candidate(atom, score));
+                } else {
+                    choose(atom);
+                }
+            }
+            prune();
+            Set<Observation> contract = new HashSet<>();
+            for (int atom = 0; atom < atoms.size(); atom++) {
+                if (chosen[atom]) contract.add(atoms.get(atom));
+            }
+            return contract;
+        }
+
+        /**
+         * Adds an observation to the contract and updates the scores of all affected observations.
+         *
+         * @param atom The index of the observation.
+         */
+        private void choose(int atom) {
+            chosen[atom] = true;
+            order.add(atom);
+            for (int negative : atom_negatives[atom]) {
+                if (negative_covered[negative]++ == 0) {
+                    for (int other : negative_atoms[negative]) gain[other]--;
+                }
+            }
+            for (int positive : atom_positives[atom]) {
+                if (positive_covered[positive]++ == 0) {
+                    for (int other : positive_atoms[positive]) {
+                        cost[other]--;
+                        // the score increased, so it is queued again to keep all queued scores upper bounds
+                        if (!chosen[other] && gain[other] > 0) queue.add(new Candidate(other, score(other)));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes observations, latest first, as long as all distinguishable test results stay covered.
+         */
+        private void prune() {
+            for (int i = order.size() - 1; i >= 0; i--) {
+                checkInterrupted();
+                int atom = order.get(i);
+                boolean needed = false;
+                for (int negative : atom_negatives[atom]) {
+                    if (negative_covered[negative] == 1) {
+                        needed = true;
+                        break;
+                    }
+                }
+                if (needed) continue;
+                chosen[atom] = false;
+                for (int negative : atom_negatives[atom]) negative_covered[negative]--;
+                for (int positive : atom_positives[atom]) positive_covered[positive]--;
+            }
+        }
+    }
+}
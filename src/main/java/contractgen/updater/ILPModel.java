@@ -0,0 +1,500 @@
+package contractgen.updater;
+
+import com.google.ortools.Loader;
+import com.google.ortools.linearsolver.MPConstraint;
+import com.google.ortools.linearsolver.MPObjective;
+import com.google.ortools.linearsolver.MPSolver;
+import com.google.ortools.linearsolver.MPVariable;
+import contractgen.Observation;
+import contractgen.TestResult;
+import contractgen.util.BitUtils;
+import contractgen.util.Pair;
+
+import java.util.*;
+
+/**
+ * The integer linear program of a set of test results, which can be extended by further test results.
+ * <p>
+ * The contract is computed in two phases, first minimizing the number of covered indistinguishable test results
+ * and afterwards the size of the contract.
+ */
+class ILPModel {
+
+    /**
+     * Whether the native libraries of OR-Tools have been loaded.
+     */
+    private static boolean loaded = false;
+    /**
+     * The time limit used for phases without a deadline once a phase had one, as limits persist in the solver.
+     */
+    private static final long NO_TIME_LIMIT = 365L * 24 * 60 * 60 * 1000;
+
+    /**
+     * The solver holding the model.
+     */
+    private final MPSolver solver;
+    /**
+     * The test results added to the model.
+     */
+    private final List<TestResult> results = new ArrayList<>();
+    /**
+     * Variables representing whether an observation is chosen or not.
+     */
+    private final Map<Observation, MPVariable> selected_observations = new HashMap<>();
+    /**
+     * The index of each observation within the model.
+     */
+    private final Map<Observation, Integer> observation_index = new HashMap<>();
+    /**
+     * Variables representing whether an indistinguishable test result is covered, together with its number of occurrences.
+     * Test results with the same observations share a single variable.
+     */
+    private final Map<Set<Observation>, Pair<MPVariable, Integer>> positive_covered = new HashMap<>();
+    /**
+     * The observation sets of distinguishable test results that were already presolved.
+     */
+    private final Set<Set<Observation>> negative = new HashSet<>();
+    /**
+     * The covering rows of distinguishable test results that are not implied by another row, per observation index.
+     */
+    private final List<Set<Row>> active_rows = new ArrayList<>();
+    /**
+     * The variables of the observations, per observation index.
+     */
+    private final List<MPVariable> variables = new ArrayList<>();
+    /**
+     * Whether covering rows are only passed to the solver once they are violated by a computed contract.
+     */
+    private final boolean lazy;
+    /**
+     * Whether the solver was given a time limit before, which has to be lifted for phases without a deadline.
+     */
+    private boolean limited = false;
+    /**
+     * The active covering rows that were not yet passed to the solver in lazy mode.
+     */
+    private final Set<Row> pending = new LinkedHashSet<>();
+    /**
+     * The number of constraints the model would have without presolving.
+     */
+    private int naive_rows = 0;
+    /**
+     * The number of constraints passed to the solver that are still active.
+     */
+    private int solver_rows = 0;
+    /**
+     * The number of observations that are forced into the contract.
+     */
+    private int forced = 0;
+    /**
+     * The weighted number of covered indistinguishable test results, fixed to its optimum while minimizing the size.
+     */
+    private final MPConstraint primary_goal;
+    /**
+     * The latest computed contract.
+     */
+    private Set<Observation> solution = Set.of();
+    /**
+     * Whether the latest computed contract is proven optimal.
+     */
+    private boolean optimal = true;
+    /**
+     * The largest relative optimality gap of both phases of the latest computation, 1 if no contract was found.
+     */
+    private double gap = 0.0;
+
+    /**
+     * Creates an empty model.
+     *
+     * @param lazy    Whether covering rows are only passed to the solver once they are violated by a computed contract.
+     * @param threads The number of workers of the solver or 0 for the default.
+     */
+    ILPModel(boolean lazy, int threads) {
+        this.lazy = lazy;
+        loadNativeLibraries();
+        solver = MPSolver.createSolver("CP_SAT");
+        if (threads > 0) solver.setNumThreads(threads);
+        primary_goal = solver.makeConstraint(0.0, MPSolver.infinity());
+    }
+
+    /**
+     * Loads the native libraries of OR-Tools once per JVM.
+     */
+    static synchronized void loadNativeLibraries() {
+        if (!loaded) {
+            Loader.loadNativeLibraries();
+            loaded = true;
+        }
+    }
+
+    /**
+     * @return The test results added to the model.
+     */
+    List<TestResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return The observations occurring in the model.
+     */
+    Set<Observation> getObservations() {
+        return selected_observations.keySet();
+    }
+
+    /**
+     * @return The latest computed contract.
+     */
+    Set<Observation> getSolution() {
+        return solution;
+    }
+
+    /**
+     * @return Whether the latest computed contract is proven optimal.
+     */
+    boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * @return The largest relative optimality gap of both phases of the latest computation, 1 if no contract was found.
+     */
+    double getGap() {
+        return gap;
+    }
+
+    /**
+     * @return The number of constraints the model would have without presolving.
+     */
+    int getNaiveRows() {
+        return naive_rows;
+    }
+
+    /**
+     * @return The number of constraints passed to the solver that are still active.
+     */
+    int getSolverRows() {
+        return solver_rows;
+    }
+
+    /**
+     * @return The number of observations that are forced into the contract.
+     */
+    int getForcedObservations() {
+        return forced;
+    }
+
+    /**
+     * Adds the variables and constraints of a single test result to the model.
+     * <p>
+     * Test results with identical observations are collapsed into a single weighted row. Distinguishable test results
+     * with a single observation force that observation into the contract, and covering rows that are a superset of
+     * another covering row are implied by it and thus dropped.
+     *
+     * @param res The test result.
+     */
+    void add(TestResult res) {
+        if (res.getPossibleObservations().isEmpty()) return;
+        results.add(res);
+        for (Observation obs : res.getPossibleObservations()) {
+            selected_observations.computeIfAbsent(obs, o -> {
+                observation_index.put(o, active_rows.size());
+                active_rows.add(new HashSet<>());
+                MPVariable var = solver.makeIntVar(0, 1, o.toString());
+                variables.add(var);
+                return var;
+            });
+        }
+        Set<Observation> observations = new HashSet<>(res.getPossibleObservations());
+        if (res.isAdversaryIndistinguishable()) {
+            naive_rows += observations.size();
+            Pair<MPVariable, Integer> var = positive_covered.get(observations);
+            if (var == null) {
+                var = new Pair<>(solver.makeIntVar(0, 1, res.toString()), 0);
+                // if the observation is selected, the test result is covered
+                for (Observation obs : observations) {
+                    MPConstraint constraint = solver.makeConstraint(0.0, MPSolver.infinity());
+                    constraint.setCoefficient(var.left(), 1);
+                    constraint.setCoefficient(selected_observations.get(obs), -1);
+                }
+                solver_rows += observations.size();
+            }
+            var = new Pair<>(var.left(), var.right() + 1);
+            positive_covered.put(observations, var);
+            primary_goal.setCoefficient(var.left(), var.right());
+        } else {
+            naive_rows++;
+            if (negative.add(observations)) addCoveringRow(observations);
+        }
+    }
+
+    /**
+     * Adds the row demanding that at least one of the observations is chosen, unless it is implied by an active row.
+     * Active rows implied by the new row are dropped.
+     *
+     * @param observations The observations of a distinguishable test result.
+     */
+    private void addCoveringRow(Set<Observation> observations) {
+        long[] bits = new long[BitUtils.words(active_rows.size())];
+        int rarest = -1;
+        for (Observation obs : observations) {
+            int index = observation_index.get(obs);
+            BitUtils.set(bits, index);
+            if (rarest < 0 || active_rows.get(index).size() < active_rows.get(rarest).size()) rarest = index;
+        }
+        // every active row that is a subset shares an observation with the new row
+        for (Observation obs : observations) {
+            for (Row row : active_rows.get(observation_index.get(obs))) {
+                if (BitUtils.isSubset(row.bits, bits)) return;
+            }
+        }
+        // every active row that is a superset contains the rarest observation of the new row
+        for (Row row : new ArrayList<>(active_rows.get(rarest))) {
+            if (BitUtils.isSubset(bits, row.bits)) deactivate(row);
+        }
+        Row row = new Row(bits, observations);
+        for (Observation obs : observations) {
+            active_rows.get(observation_index.get(obs)).add(row);
+        }
+        if (observations.size() == 1) {
+            // a single observation is forced into the contract
+            selected_observations.get(observations.iterator().next()).setLb(1.0);
+            forced++;
+        } else if (lazy) {
+            pending.add(row);
+        } else {
+            addConstraint(row);
+        }
+    }
+
+    /**
+     * Passes a covering row to the solver.
+     *
+     * @param row The row.
+     */
+    private void addConstraint(Row row) {
+        // for every negative test case, at least one observation must be chosen
+        row.constraint = solver.makeConstraint(1.0, MPSolver.infinity());
+        for (Observation obs : row.observations) {
+            row.constraint.setCoefficient(selected_observations.get(obs), 1);
+        }
+        solver_rows++;
+    }
+
+    /**
+     * Passes all pending covering rows to the solver that are violated by the latest solution of the solver.
+     *
+     * @return Whether any row was violated.
+     */
+    private boolean separate() {
+        if (pending.isEmpty()) return false;
+        long[] chosen = new long[BitUtils.words(variables.size())];
+        for (int i = 0; i < variables.size(); i++) {
+            if (variables.get(i).solutionValue() > 0.0) BitUtils.set(chosen, i);
+        }
+        boolean violated = false;
+        for (Iterator<Row> it = pending.iterator(); it.hasNext(); ) {
+            Row row = it.next();
+            if (!BitUtils.intersects(row.bits, chosen)) {
+                it.remove();
+                addConstraint(row);
+                violated = true;
+            }
+        }
+        return violated;
+    }
+
+    /**
+     * Removes an implied row from the solver and the index.
+     *
+     * @param row The row.
+     */
+    private void deactivate(Row row) {
+        for (Observation obs : row.observations) {
+            active_rows.get(observation_index.get(obs)).remove(row);
+        }
+        pending.remove(row);
+        if (row.constraint != null) {
+            for (Observation obs : row.observations) {
+                row.constraint.setCoefficient(selected_observations.get(obs), 0);
+            }
+            row.constraint.setBounds(-MPSolver.infinity(), MPSolver.infinity());
+            solver_rows--;
+        }
+    }
+
+    /**
+     * Computes the contract of this model.
+     * <p>
+     * In lazy mode, each phase is solved again with the violated covering rows until no row is violated. A solution
+     * of the relaxed problem that satisfies all rows is optimal for the full problem, hence the optimum of the first
+     * phase can still be fixed while minimizing the size.
+     * <p>
+     * If a phase reaches its deadline, the best contract found so far is used. If the first phase does not find any
+     * contract in time, the hint is used, so the hint should cover all distinguishable test results. The deadlines are
+     * points in time, so components solved for the same update can share them.
+     *
+     * @param oldContract       The old contract to be used as hint.
+     * @param primaryDeadline   The time in milliseconds at which minimizing the false positives stops or 0 for none.
+     * @param secondaryDeadline The time in milliseconds at which minimizing the size stops or 0 for none.
+     * @return The computed contract.
+     */
+    Set<Observation> solve(Set<Observation> oldContract, long primaryDeadline, long secondaryDeadline) {
+        Map<MPVariable, Double> hint = new HashMap<>();
+        for (Map.Entry<Observation, MPVariable> entry : selected_observations.entrySet()) {
+            hint.put(entry.getValue(), oldContract.contains(entry.getKey()) ? 1.0 : 0.0);
+        }
+        for (Map.Entry<Set<Observation>, Pair<MPVariable, Integer>> entry : positive_covered.entrySet()) {
+            hint.put(entry.getValue().left(), Collections.disjoint(entry.getKey(), oldContract) ? 0.0 : 1.0);
+        }
+
+        // Minimize number of tests without violation covered
+        MPObjective objective = solver.objective();
+        objective.clear();
+        for (Pair<MPVariable, Integer> var : positive_covered.values()) {
+            objective.setCoefficient(var.left(), var.right());
+        }
+        objective.setMinimization();
+        primary_goal.setBounds(0.0, MPSolver.infinity());
+
+        List<Map.Entry<MPVariable, Double>> entries = hint.entrySet().stream().toList();
+        MPVariable[] hint_var = new MPVariable[hint.size()];
+        double[] hint_val;
+        entries.stream().map(Map.Entry::getKey).toList().toArray(hint_var);
+        hint_val = entries.stream().map(Map.Entry::getValue).mapToDouble(Double::doubleValue).toArray();
+        solver.setHint(hint_var, hint_val);
+        MPSolver.ResultStatus status = solve(primaryDeadline);
+        if (!hasSolution(status)) {
+            optimal = false;
+            gap = 1.0;
+            solution = toContract(hint);
+            return solution;
+        }
+        optimal = status == MPSolver.ResultStatus.OPTIMAL;
+        gap = gap(objective);
+
+        hint.clear();
+        for (MPVariable var : hint_var) {
+            hint.put(var, var.solutionValue());
+        }
+
+        double goal = objective.value();
+        objective.clear();
+        primary_goal.setBounds(goal, goal);
+
+        // Minimize overall size of the contract
+        for (MPVariable var : selected_observations.values()) {
+            objective.setCoefficient(var, 1);
+        }
+        objective.setMinimization();
+
+        entries = hint.entrySet().stream().toList();
+        entries.stream().map(Map.Entry::getKey).toList().toArray(hint_var);
+        hint_val = entries.stream().map(Map.Entry::getValue).mapToDouble(Double::doubleValue).toArray();
+        solver.setHint(hint_var, hint_val);
+        status = solve(secondaryDeadline);
+        if (!hasSolution(status)) {
+            // the solution of the first phase is still valid
+            optimal = false;
+            solution = toContract(hint);
+            return solution;
+        }
+        optimal &= status == MPSolver.ResultStatus.OPTIMAL;
+        gap = Math.max(gap, gap(objective));
+
+        Set<Observation> new_contract = new HashSet<>();
+        for (Map.Entry<Observation, MPVariable> entry : selected_observations.entrySet()) {
+            if (entry.getValue().solutionValue() > 0.0) {
+                new_contract.add(entry.getKey());
+            }
+        }
+        solution = new_contract;
+        return new_contract;
+    }
+
+    /**
+     * Solves the current phase, including all rounds of the lazy mode.
+     *
+     * @param deadline The time in milliseconds at which the phase stops or 0 for none.
+     * @return The status of the solver, which is not solved if violated rows remain at the deadline.
+     */
+    private MPSolver.ResultStatus solve(long deadline) {
+        MPSolver.ResultStatus status;
+        do {
+            if (deadline > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return MPSolver.ResultStatus.NOT_SOLVED;
+                solver.setTimeLimit(remaining);
+                limited = true;
+            } else if (limited) {
+                solver.setTimeLimit(NO_TIME_LIMIT);
+            }
+            status = solver.solve();
+        } while (hasSolution(status) && separate());
+        return status;
+    }
+
+    /**
+     * @param status The status of the solver.
+     * @return Whether the solver found a feasible solution.
+     */
+    private static boolean hasSolution(MPSolver.ResultStatus status) {
+        return status == MPSolver.ResultStatus.OPTIMAL || status == MPSolver.ResultStatus.FEASIBLE;
+    }
+
+    /**
+     * @param objective The objective of the solved phase.
+     * @return The gap between the value and the best bound relative to the value.
+     */
+    private static double gap(MPObjective objective) {
+        double value = objective.value();
+        return Math.max(0.0, value - objective.bestBound()) / Math.max(1.0, Math.abs(value));
+    }
+
+    /**
+     * @param values The values of the variables.
+     * @return The observations whose variable is set.
+     */
+    private Set<Observation> toContract(Map<MPVariable, Double> values) {
+        Set<Observation> contract = new HashSet<>();
+        for (Map.Entry<Observation, MPVariable> entry : selected_observations.entrySet()) {
+            if (values.getOrDefault(entry.getValue(), 0.0) > 0.0) {
+                contract.add(entry.getKey());
+            }
+        }
+        return contract;
+    }
+
+    /**
+     * Releases the native resources of the solver, the model must not be used afterwards.
+     */
+    void delete() {
+        solver.delete();
+    }
+
+    /**
+     * A covering row of a distinguishable test result.
+     */
+    private static final class Row {
+        /**
+         * The observations as bitset over their index within the model.
+         */
+        private final long[] bits;
+        /**
+         * The observations.
+         */
+        private final Set<Observation> observations;
+        /**
+         * The constraint passed to the solver or null if the single observation is forced or the row is pending.
+         */
+        private MPConstraint constraint = null;
+
+        /**
+         * @param bits         The observations as bitset over their index within the model.
+         * @param observations The observations.
+         */
+        private Row(long[] bits, Set<Observation> observations) {
+            this.bits = bits;
+            this.observations = observations;
+        }
+    }
+}
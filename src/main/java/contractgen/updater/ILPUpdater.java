@@ -1,142 +1,229 @@
 package contractgen.updater;
 
-import com.google.ortools.Loader;
-import com.google.ortools.linearsolver.MPConstraint;
-import com.google.ortools.linearsolver.MPObjective;
-import com.google.ortools.linearsolver.MPSolver;
-import com.google.ortools.linearsolver.MPVariable;
 import contractgen.Observation;
 import contractgen.TestResult;
 import contractgen.Updater;
-import contractgen.util.Pair;
 
 import java.util.*;
 
 /**
  * Updates the contract using integer linear programming.
+ * <p>
+ * Observations and test results only interact through shared observations, so the problem is split into
+ * connected components that are solved independently and in parallel. The false positives and the size of
+ * the contract are sums over the components, hence the union of the optimal contracts of all components is optimal.
+ * <p>
+ * The models are kept between updates and only extended by the test results appended since the last update,
+ * as long as the same list of test results is passed. Only components that changed are solved again.
+ * <p>
+ * Each model is presolved while it is built, see {@link ILPModel#add(TestResult)}. The solver of each changed
+ * component is warm-started with the old contract completed by {@link GreedyUpdater} over the test results of that
+ * component, so an incremental update does not revisit the other components.
+ * <p>
+ * For large sets of test results, the updater can run in lazy mode, where covering constraints of distinguishable
+ * test results are only added to the solver once a computed contract violates them.
+ * <p>
+ * Both phases can be given a time limit, after which the best contract found so far is used and reported together
+ * with its optimality gap. The limits are measured from the start of an update, including building the models and the
+ * hints, and are shared by all components, so the first phase ends after the primary time limit and the whole update
+ * after both limits. Components that were not solved to optimality are solved again on the next update.
  */
 public class ILPUpdater implements Updater {
+
+    /**
+     * Whether covering constraints are only added once they are violated.
+     */
+    private final boolean lazy;
+    /**
+     * The time after the start of an update at which minimizing the false positives stops in milliseconds or 0 for no
+     * limit.
+     */
+    private final long primary_time_limit;
+    /**
+     * The time after the end of the primary time limit at which minimizing the size stops in milliseconds or 0 for no
+     * limit.
+     */
+    private final long secondary_time_limit;
+    /**
+     * The number of workers of each solver or 0 for the default.
+     */
+    private final int threads;
+
+    /**
+     * The list of test results the models were built from.
+     */
+    private transient List<TestResult> results;
+    /**
+     * The number of test results that were added to the models.
+     */
+    private transient int processed;
+    /**
+     * The component each observation belongs to.
+     */
+    private transient Map<Observation, ILPModel> components;
+    /**
+     * The components that changed since they were solved last.
+     */
+    private transient Set<ILPModel> changed;
+
+    /**
+     * Creates an updater that passes all constraints to the solver up front.
+     */
+    public ILPUpdater() {
+        this(false);
+    }
+
+    /**
+     * @param lazy Whether covering constraints are only added once they are violated.
+     */
+    public ILPUpdater(boolean lazy) {
+        this(lazy, 0, 0, 0);
+    }
+
+    /**
+     * @param lazy               Whether covering constraints are only added once they are violated.
+     * @param primaryTimeLimit   The time after the start of an update at which minimizing the false positives stops in
+     *                           milliseconds or 0 for no limit.
+     * @param secondaryTimeLimit The time after the end of the primary time limit at which minimizing the size stops in
+     *                           milliseconds or 0 for no limit.
+     * @param threads            The number of workers of each solver or 0 for the default.
+     */
+    public ILPUpdater(boolean lazy, long primaryTimeLimit, long secondaryTimeLimit, int threads) {
+        if (primaryTimeLimit < 0 || secondaryTimeLimit < 0 || threads < 0)
+            throw new IllegalArgumentException("Time limits and threads must not be negative.");
+        this.lazy = lazy;
+        this.primary_time_limit = primaryTimeLimit;
+        this.secondary_time_limit = secondaryTimeLimit;
+        this.threads = threads;
+    }
+
+    /**
+     * @return Whether the latest computed contract is proven optimal, which only fails if a time limit was hit.
+     */
     @Override
-    public Set<Observation> update(List<TestResult> testResults, Set<Observation> oldContract) {
-
-        Map<MPVariable, Double> hint = new HashMap<>();
-        boolean oldMethod = true;
-        // Select between one variable per indistinguishable test case (oldMethod) and one variable per observation (that leads to n false positives) to optimize memory usage
-        List<TestResult> positive =
-                testResults.stream().filter(res -> !res.getPossibleObservations().isEmpty()).filter(TestResult::isAdversaryIndistinguishable).toList();
-        List<TestResult> negative =
-                testResults.stream().filter(res -> !res.getPossibleObservations().isEmpty()).filter(TestResult::isAdversaryDistinguishable).toList();
-
-        Loader.loadNativeLibraries();
-        MPSolver solver = MPSolver.createSolver("CP_SAT");
-
-        Set<Observation> allObservations = new HashSet<>();
-        testResults.forEach(res -> allObservations.addAll(res.getPossibleObservations()));
-
-        // variables representing whether obs is chosen or not
-        HashMap<Object, Pair<MPVariable, Integer>> positive_covered;
-        HashMap<Observation, MPVariable> selected_observations = new HashMap<>(allObservations.size());
-        for (Observation obs : allObservations) {
-            MPVariable var = solver.makeIntVar(0, 1, obs.toString());
-            selected_observations.put(obs, var);
-            hint.put(var, oldContract.contains(obs) ? 1.0 : 0.0);
-        }
-        if (oldMethod) {
-            positive_covered = new HashMap<>(positive.size());
-            for (TestResult pe : positive) {
-                Pair<MPVariable, Integer> var = positive_covered.getOrDefault(pe, new Pair<>(solver.makeIntVar(0, 1, pe.toString()), 0));
-                positive_covered.put(pe, new Pair<>(var.left(), var.right() + 1));
-                hint.put(var.left(), oldContract.stream().anyMatch(o -> pe.getPossibleObservations().contains(o)) ? 1.0 : 0.0);
-            }
-        } else {
-            // count the number of times each observation occurs in the positive test cases
-            HashMap<Observation, Integer> occurrences = new HashMap<>(allObservations.size());
-            for (Observation obs : allObservations) {
-                occurrences.put(obs, 0);
-            }
-            for (TestResult pe : positive) {
-                for (Observation obs : pe.getPossibleObservations()) {
-                    occurrences.put(obs, occurrences.get(obs) + 1);
-                }
-            }
-            positive_covered = new HashMap<>(positive.size());
-            for (Observation obs : allObservations) {
-                positive_covered.put(obs, new Pair<>(solver.makeIntVar(0, 1, obs.toString()), occurrences.get(obs)));
-            }
-        }
+    public synchronized boolean isOptimal() {
+        return components == null || components.values().stream().allMatch(ILPModel::isOptimal);
+    }
 
-        // Minimize number of tests without violation covered
-        MPObjective objective = solver.objective();
-        for (Pair<MPVariable, Integer> var : positive_covered.values()) {
-            objective.setCoefficient(var.left(), var.right());
-        }
-        objective.setMinimization();
-
-        if (oldMethod) {
-            for (TestResult pe : positive) {
-                for (Observation obs : pe.getPossibleObservations()) {
-                    MPConstraint constraint = solver.makeConstraint(0.0, MPSolver.infinity());
-                    constraint.setCoefficient(positive_covered.get(pe).left(), 1);
-                    constraint.setCoefficient(selected_observations.get(obs), -1);
-                }
-            }
-        } else {
-            // if the observation is selected -> do = 1, then ca = 1
-            for (Observation obs : allObservations) {
-                MPConstraint constraint = solver.makeConstraint(0.0, MPSolver.infinity());
-                constraint.setCoefficient(positive_covered.get(obs).left(), 1);
-                constraint.setCoefficient(selected_observations.get(obs), -1);
+    /**
+     * @return The largest relative optimality gap of any component of the latest computed contract.
+     */
+    public synchronized double getGap() {
+        return components == null ? 0.0 : components.values().stream().mapToDouble(ILPModel::getGap).max().orElse(0.0);
+    }
+
+    /**
+     * @return The number of constraints passed to the solver relative to the number of constraints without presolving.
+     */
+    public synchronized double getReductionRatio() {
+        int naive = 0;
+        int rows = 0;
+        if (components != null) {
+            for (ILPModel component : new HashSet<>(components.values())) {
+                naive += component.getNaiveRows();
+                rows += component.getSolverRows();
             }
         }
+        return naive == 0 ? 1.0 : (double) rows / naive;
+    }
 
-        // for every negative test case, at least one observation must be chosen
-        for (TestResult ctx : negative) {
-            MPConstraint constraint = solver.makeConstraint(1.0, MPSolver.infinity());
-            for (Observation obs : ctx.getPossibleObservations()) {
-                constraint.setCoefficient(selected_observations.get(obs), 1);
+    @Override
+    public synchronized String getStats() {
+        int forced = 0;
+        if (components != null) {
+            for (ILPModel component : new HashSet<>(components.values())) {
+                forced += component.getForcedObservations();
             }
         }
+        return "\tILP Reduction Ratio: " + String.format("%.3f", getReductionRatio()) + "\n" +
+                "\tForced Observations: " + forced + "\n" +
+                "\tILP Gap: " + String.format("%.3f", getGap()) + "\n";
+    }
 
-        List<Map.Entry<MPVariable, Double>> entries = hint.entrySet().stream().toList();
-
-        MPVariable[] hint_var = new MPVariable[hint.size()];
-        double[] hint_val;
-        entries.stream().map(Map.Entry::getKey).toList().toArray(hint_var);
-        hint_val = entries.stream().map(Map.Entry::getValue).mapToDouble(Double::doubleValue).toArray();
-        solver.setHint(hint_var, hint_val);
-        solver.solve();
-
-        hint.clear();
-        for (MPVariable var : hint_var) {
-            hint.put(var, var.solutionValue());
+    @Override
+    public synchronized void reset() {
+        if (components != null) {
+            new HashSet<>(components.values()).forEach(ILPModel::delete);
         }
+        results = null;
+        components = null;
+        changed = null;
+    }
 
-        double goal = objective.value();
-        objective.clear();
+    @Override
+    public synchronized Set<Observation> update(List<TestResult> testResults, Set<Observation> oldContract) {
+        long start = System.currentTimeMillis();
+        return update(testResults, oldContract,
+                primary_time_limit == 0 ? 0 : start + primary_time_limit,
+                secondary_time_limit == 0 ? 0 : start + primary_time_limit + secondary_time_limit);
+    }
 
-        MPConstraint primaryGoal = solver.makeConstraint(goal, goal);
-        for (Pair<MPVariable, Integer> var : positive_covered.values()) {
-            primaryGoal.setCoefficient(var.left(), var.right());
+    /**
+     * Updates the contract with deadlines given by the caller instead of the time limits of this updater.
+     *
+     * @param testResults       The test results to be considered in the computation.
+     * @param oldContract       The old contract to be used as hint.
+     * @param primaryDeadline   The time in milliseconds at which minimizing the false positives stops or 0 for none.
+     * @param secondaryDeadline The time in milliseconds at which minimizing the size stops or 0 for none.
+     * @return The computed contract.
+     */
+    synchronized Set<Observation> update(List<TestResult> testResults, Set<Observation> oldContract, long primaryDeadline, long secondaryDeadline) {
+        if (components == null || testResults != results || testResults.size() < processed) {
+            reset();
+            results = testResults;
+            processed = 0;
+            components = new HashMap<>();
+            changed = new HashSet<>();
         }
-
-        // Minimize overall size of the contract
-        for (MPVariable var : selected_observations.values()) {
-            objective.setCoefficient(var, 1);
+        for (; processed < testResults.size(); processed++) {
+            add(testResults.get(processed));
+        }
+        for (ILPModel component : components.values()) {
+            if (!component.isOptimal()) changed.add(component);
         }
-        objective.setMinimization();
 
-        entries = hint.entrySet().stream().toList();
-        entries.stream().map(Map.Entry::getKey).toList().toArray(hint_var);
-        hint_val = entries.stream().map(Map.Entry::getValue).mapToDouble(Double::doubleValue).toArray();
-        solver.setHint(hint_var, hint_val);
-        solver.solve();
+        // the old contract completed by a greedy cover of the component is a feasible hint
+        changed.parallelStream().forEach(component ->
+                component.solve(GreedyUpdater.cover(component.getResults(), oldContract), primaryDeadline, secondaryDeadline));
+        changed.clear();
 
         Set<Observation> new_contract = new HashSet<>();
-        for (Map.Entry<Observation, MPVariable> entry : selected_observations.entrySet()) {
-            if (entry.getValue().solutionValue() > 0.0) {
-                new_contract.add(entry.getKey());
+        new HashSet<>(components.values()).forEach(component -> new_contract.addAll(component.getSolution()));
+        return new_contract;
+    }
+
+    /**
+     * Adds a test result to the component of its observations, merging all components it connects.
+     *
+     * @param res The test result.
+     */
+    private void add(TestResult res) {
+        if (res.getPossibleObservations().isEmpty()) return;
+        ILPModel target = null;
+        Set<ILPModel> connected = new HashSet<>();
+        for (Observation obs : res.getPossibleObservations()) {
+            ILPModel component = components.get(obs);
+            if (component == null) continue;
+            connected.add(component);
+            if (target == null || component.getResults().size() > target.getResults().size()) target = component;
+        }
+        if (target == null) target = new ILPModel(lazy, threads);
+        for (ILPModel component : connected) {
+            if (component == target) continue;
+            // merge the smaller component into the larger one
+            for (TestResult merged : component.getResults()) {
+                target.add(merged);
+            }
+            for (Observation obs : component.getObservations()) {
+                components.put(obs, target);
             }
+            changed.remove(component);
+            component.delete();
         }
-        return new_contract;
+        target.add(res);
+        for (Observation obs : res.getPossibleObservations()) {
+            components.put(obs, target);
+        }
+        changed.add(target);
     }
 }
@@ -0,0 +1,181 @@
+package contractgen.updater;
+
+import com.google.ortools.linearsolver.MPConstraint;
+import com.google.ortools.linearsolver.MPObjective;
+import com.google.ortools.linearsolver.MPSolver;
+import com.google.ortools.linearsolver.MPVariable;
+import contractgen.Contract;
+import contractgen.Observation;
+import contractgen.TestResult;
+import contractgen.Updater;
+
+import java.util.*;
+
+/**
+ * Approximates the contract of the {@link ILPUpdater} by solving the linear relaxation of its first phase and
+ * rounding the solution.
+ * <p>
+ * The relaxation is solved with GLOP, which is much faster than solving the integer program. Observations with a
+ * value of at least one half are chosen, and further candidates are drawn by randomized rounding. Each candidate is
+ * completed by {@link GreedyUpdater}, which also removes observations that are not needed, and the candidate with the
+ * fewest false positives and, among those, the smallest size is used.
+ * <p>
+ * The optimum of the relaxation is a lower bound of the false positives of any contract, so the gap of the computed
+ * contract is reported.
+ */
+public class LPUpdater implements Updater {
+
+    /**
+     * The number of randomized roundings in addition to the threshold rounding.
+     */
+    private final int rounds;
+    /**
+     * The seed of the randomized roundings.
+     */
+    private final long seed;
+
+    /**
+     * The lower bound of the false positives of the latest computation.
+     */
+    private transient double lower_bound = 0.0;
+    /**
+     * The false positives of the latest computed contract.
+     */
+    private transient long false_positives = 0;
+
+    /**
+     * Creates an updater using a few randomized roundings.
+     */
+    public LPUpdater() {
+        this(8, 0);
+    }
+
+    /**
+     * @param rounds The number of randomized roundings in addition to the threshold rounding.
+     * @param seed   The seed of the randomized roundings.
+     */
+    public LPUpdater(int rounds, long seed) {
+        if (rounds < 0)
+            throw new IllegalArgumentException("The number of rounds must not be negative.");
+        this.rounds = rounds;
+        this.seed = seed;
+    }
+
+    /**
+     * @return The optimum of the relaxation, a lower bound of the false positives of any contract.
+     */
+    public synchronized double getLowerBound() {
+        return lower_bound;
+    }
+
+    /**
+     * @return The gap between the false positives of the latest computed contract and the lower bound relative to the
+     * false positives.
+     */
+    public synchronized double getGap() {
+        return Math.max(0.0, false_positives - lower_bound) / Math.max(1.0, false_positives);
+    }
+
+    @Override
+    public synchronized String getStats() {
+        return "\tLP Bound: " + String.format("%.3f", lower_bound) + "\n" +
+                "\tLP Gap: " + String.format("%.3f", getGap()) + "\n";
+    }
+
+    @Override
+    public synchronized Set<Observation> update(List<TestResult> testResults, Set<Observation> oldContract) {
+        Map<Observation, Double> relaxation = relax(testResults);
+
+        Set<Observation> threshold = new HashSet<>();
+        relaxation.forEach((obs, value) -> {
+            if (value >= 0.5) threshold.add(obs);
+        });
+        Set<Observation> best = GreedyUpdater.cover(testResults, threshold);
+        long[] best_score = score(testResults, best);
+        Random random = new Random(seed);
+        for (int round = 0; round < rounds; round++) {
+            Set<Observation> sample = new HashSet<>();
+            relaxation.forEach((obs, value) -> {
+                if (random.nextDouble() < value) sample.add(obs);
+            });
+            Set<Observation> candidate = GreedyUpdater.cover(testResults, sample);
+            long[] score = score(testResults, candidate);
+            if (Arrays.compare(score, best_score) < 0) {
+                best = candidate;
+                best_score = score;
+            }
+        }
+        false_positives = best_score[0];
+        return best;
+    }
+
+    /**
+     * Solves the relaxation of minimizing the false positives, where identical test results share a single row.
+     *
+     * @param testResults The test results.
+     * @return The value of each observation in the optimal solution of the relaxation.
+     */
+    private Map<Observation, Double> relax(List<TestResult> testResults) {
+        ILPModel.loadNativeLibraries();
+        MPSolver solver = MPSolver.createSolver("GLOP");
+        try {
+            Map<Observation, MPVariable> selected_observations = new HashMap<>();
+            Map<Set<Observation>, Integer> positives = new HashMap<>();
+            Set<Set<Observation>> negatives = new HashSet<>();
+            for (TestResult res : testResults) {
+                if (res.getPossibleObservations().isEmpty()) continue;
+                Set<Observation> observations = new HashSet<>(res.getPossibleObservations());
+                for (Observation obs : observations) {
+                    selected_observations.computeIfAbsent(obs, o -> solver.makeNumVar(0.0, 1.0, o.toString()));
+                }
+                if (res.isAdversaryIndistinguishable()) {
+                    positives.merge(observations, 1, Integer::sum);
+                } else if (negatives.add(observations)) {
+                    // for every negative test case, at least one observation must be chosen
+                    MPConstraint constraint = solver.makeConstraint(1.0, MPSolver.infinity());
+                    for (Observation obs : observations) {
+                        constraint.setCoefficient(selected_observations.get(obs), 1);
+                    }
+                }
+            }
+            MPObjective objective = solver.objective();
+            for (Map.Entry<Set<Observation>, Integer> entry : positives.entrySet()) {
+                MPVariable covered = solver.makeNumVar(0.0, 1.0, "");
+                // if the observation is selected, the test result is covered
+                for (Observation obs : entry.getKey()) {
+                    MPConstraint constraint = solver.makeConstraint(0.0, MPSolver.infinity());
+                    constraint.setCoefficient(covered, 1);
+                    constraint.setCoefficient(selected_observations.get(obs), -1);
+                }
+                objective.setCoefficient(covered, entry.getValue());
+            }
+            objective.setMinimization();
+
+            MPSolver.ResultStatus status = solver.solve();
+            Map<Observation, Double> values = new HashMap<>();
+            if (status != MPSolver.ResultStatus.OPTIMAL) {
+                // without a relaxation, the contract is computed by the greedy repair alone
+                lower_bound = 0.0;
+                return values;
+            }
+            lower_bound = objective.value();
+            selected_observations.forEach((obs, var) -> values.put(obs, var.solutionValue()));
+            return values;
+        } finally {
+            solver.delete();
+        }
+    }
+
+    /**
+     * @param testResults The test results.
+     * @param contract    The contract.
+     * @return The false positives and the size of the contract, to be compared lexicographically.
+     */
+    private static long[] score(List<TestResult> testResults, Set<Observation> contract) {
+        long false_positives = 0;
+        for (TestResult res : testResults) {
+            if (res.isAdversaryIndistinguishable() && Contract.covers(contract, res)) false_positives++;
+        }
+        return new long[]{false_positives, contract.size()};
+    }
+}
@@ -0,0 +1,210 @@
+package contractgen.updater;
+
+import contractgen.Contract;
+import contractgen.Observation;
+import contractgen.TestResult;
+import contractgen.Updater;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the ILP, a greedy set cover and the two-way updater concurrently and returns the best contract available at
+ * the deadline, i.e. the one with the fewest false positives and, among those, the smallest size.
+ * <p>
+ * The heuristics answer easy updates quickly, while the ILP still solves the hard ones. Each update passes the
+ * heuristics their own snapshot of the test results, and heuristics still running at the deadline are interrupted and
+ * stop. The ILP stops at the same deadline and keeps its model between updates. An ILP that is still building its
+ * model at the next update is not waited for: it is released once it finishes and the next update starts a fresh ILP
+ * on a fresh view of the test results. If no strategy finished by the deadline, the old contract is kept.
+ */
+public class PortfolioUpdater implements Updater {
+
+    /**
+     * The time to wait for the strategies in milliseconds.
+     */
+    private final long time_limit;
+    /**
+     * The exact strategy, limited to the deadline.
+     */
+    private ILPUpdater ilp = new ILPUpdater();
+    /**
+     * The heuristic strategies.
+     */
+    private final List<Updater> heuristics = List.of(new GreedyUpdater(), new TwoWayUpdater());
+
+    /**
+     * The executor running the strategies.
+     */
+    private transient ExecutorService executor;
+    /**
+     * The test results seen by the ILP, only extended while the ILP is not running.
+     */
+    private transient List<TestResult> view;
+    /**
+     * The read-only view of the test results passed to the ILP.
+     */
+    private transient List<TestResult> shared_view;
+    /**
+     * The latest run of the ILP.
+     */
+    private transient Future<Set<Observation>> ilp_run;
+    /**
+     * Whether the latest contract was computed by the ILP and proven optimal.
+     */
+    private transient boolean optimal = false;
+    /**
+     * The name of the strategy that computed the latest contract.
+     */
+    private transient String winner = "";
+
+    /**
+     * @param timeLimit The time to wait for the strategies in milliseconds.
+     */
+    public PortfolioUpdater(long timeLimit) {
+        if (timeLimit <= 0)
+            throw new IllegalArgumentException("The time limit must be positive.");
+        this.time_limit = timeLimit;
+    }
+
+    @Override
+    public synchronized boolean isOptimal() {
+        return optimal;
+    }
+
+    @Override
+    public synchronized String getStats() {
+        return "\tPortfolio Winner: " + winner + "\n" + ilp.getStats();
+    }
+
+    @Override
+    public synchronized void reset() {
+        releaseIlp();
+        ilp.reset();
+        view = null;
+        shared_view = null;
+    }
+
+    @Override
+    public synchronized Set<Observation> update(List<TestResult> testResults, Set<Observation> oldContract) {
+        long deadline = System.currentTimeMillis() + time_limit;
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "Portfolio");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        releaseIlp();
+        if (view == null || testResults.size() < view.size()) {
+            ilp.reset();
+            view = new ArrayList<>(testResults);
+            // the ILP keeps its model as long as it is passed the same list
+            shared_view = Collections.unmodifiableList(view);
+        } else {
+            view.addAll(testResults.subList(view.size(), testResults.size()));
+        }
+        List<TestResult> exact_view = shared_view;
+        // cancelled heuristics may still be winding down during the next update, so they never share a list
+        List<TestResult> results = List.copyOf(testResults);
+
+        CompletionService<Set<Observation>> completion = new ExecutorCompletionService<>(executor);
+        ILPUpdater exact = ilp;
+        // both phases together must finish within the deadline
+        ilp_run = completion.submit(() -> exact.update(exact_view, oldContract, deadline - time_limit / 4, deadline));
+        Map<Future<Set<Observation>>, String> runs = new HashMap<>();
+        runs.put(ilp_run, "ILP");
+        for (Updater heuristic : heuristics) {
+            runs.put(completion.submit(() -> heuristic.update(results, oldContract)), heuristic.getClass().getSimpleName());
+        }
+
+        Set<Observation> best = null;
+        long[] best_score = null;
+        optimal = false;
+        try {
+            for (int pending = runs.size(); pending > 0 && !optimal; pending--) {
+                long remaining = deadline - System.currentTimeMillis();
+                // beyond the deadline, only collect strategies that have already finished
+                Future<Set<Observation>> run = completion.poll(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                if (run == null) break;
+                Set<Observation> candidate;
+                try {
+                    candidate = run.get();
+                } catch (ExecutionException e) {
+                    System.out.println("Strategy " + runs.get(run) + " failed: " + e.getCause());
+                    continue;
+                }
+                long[] score = score(results, candidate);
+                if (best_score == null || Arrays.compare(score, best_score) < 0) {
+                    best = candidate;
+                    best_score = score;
+                    winner = runs.get(run);
+                }
+                // an optimal contract cannot be improved by the heuristics, so any contract as good is optimal
+                if (run == ilp_run && ilp.isOptimal()) optimal = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        for (Future<Set<Observation>> run : runs.keySet()) {
+            if (run != ilp_run) run.cancel(true);
+        }
+        if (best == null) {
+            System.out.println("No strategy computed a contract before the deadline, keeping the old contract.");
+            winner = "None";
+            return oldContract == null ? Set.of() : oldContract;
+        }
+        return best;
+    }
+
+    /**
+     * Concludes the latest run of the ILP without waiting for it.
+     * <p>
+     * A finished run keeps its model for the next update. A run still busy beyond its deadline still reads the view,
+     * hence it is replaced by a fresh ILP on a fresh view and released in the background once it finishes.
+     */
+    private void releaseIlp() {
+        if (ilp_run == null) return;
+        if (ilp_run.isDone()) {
+            try {
+                ilp_run.get();
+            } catch (ExecutionException | CancellationException | InterruptedException ignored) {
+                // the next run starts from scratch
+                ilp.reset();
+            }
+        } else {
+            ILPUpdater late = ilp;
+            Future<Set<Observation>> late_run = ilp_run;
+            executor.execute(() -> {
+                try {
+                    late_run.get();
+                } catch (ExecutionException | CancellationException | InterruptedException ignored) {
+                    // the model is released either way
+                }
+                late.reset();
+            });
+            ilp = new ILPUpdater();
+            view = null;
+            shared_view = null;
+        }
+        ilp_run = null;
+    }
+
+    /**
+     * @param testResults The test results.
+     * @param contract    The contract.
+     * @return The number of uncovered distinguishable test results, the false positives and the size of the contract,
+     * to be compared lexicographically.
+     */
+    private static long[] score(List<TestResult> testResults, Set<Observation> contract) {
+        long uncovered = 0;
+        long false_positives = 0;
+        for (TestResult res : testResults) {
+            boolean covered = Contract.covers(contract, res);
+            if (res.isAdversaryDistinguishable() && !covered) uncovered++;
+            if (res.isAdversaryIndistinguishable() && covered) false_positives++;
+        }
+        return new long[]{uncovered, false_positives, contract.size()};
+    }
+}
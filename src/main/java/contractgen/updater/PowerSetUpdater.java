@@ -4,16 +4,19 @@ import contractgen.Contract;
 import contractgen.Observation;
 import contractgen.TestResult;
 import contractgen.Updater;
+import contractgen.util.BitUtils;
 
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.*;
 
 /**
- * Computes a contract building the powerset of all possible contracts and afterwards selecting the cheapest one.
+ * Computes the contract with the lowest total value of its observations that covers all test results.
+ * <p>
+ * Instead of enumerating the powerset of all observations, a depth-first branch and bound search is used. Each node
+ * branches on an uncovered test result by adding one of its observations and excluding the observations of the
+ * previous branches, so every contract is reached at most once. Starting from the contract of {@link GreedyUpdater}
+ * as incumbent, nodes whose value plus an admissible lower bound for the remaining test results is not cheaper than
+ * the incumbent are pruned. The search keeps a single path of nodes, hence its memory is linear in the number of
+ * observations.
  */
 public class PowerSetUpdater implements Updater {
 
@@ -21,34 +24,160 @@ public class PowerSetUpdater implements Updater {
     public Set<Observation> update(List<TestResult> testResults, Set<Observation> ignored) {
         Set<Observation> all = new HashSet<>();
         testResults.forEach(ctx -> all.addAll(ctx.getPossibleObservations()));
-        return setCover(set -> Contract.coversAll(testResults, set), Comparator.comparingInt(a -> a.stream().mapToInt(Observation::getValue).sum()), all);
+        // covering is monotone, so if all observations do not suffice, no contract does
+        if (!Contract.coversAll(testResults, all)) return null;
+        return new Search(testResults.stream().filter(TestResult::isAdversaryDistinguishable).toList(), all)
+                .run(GreedyUpdater.cover(testResults, Set.of()));
     }
 
     /**
-     * @param set A set.
-     * @param <T> The type of each element.
-     * @return The powerset of the given set.
+     * The state of a single search.
      */
-    private static <T> Set<Set<T>> enumeratePossibilities(Set<T> set) {
-        Set<Set<T>> possibilities = new HashSet<>();
-        for (T t : set) {
-            Set<Set<T>> new_possibilities = possibilities.stream().map(HashSet::new).collect(Collectors.toSet());
-            new_possibilities.forEach(s -> s.add(t));
-            new_possibilities.add(Set.of(t));
-            possibilities.addAll(new_possibilities);
+    private static class Search {
+        /**
+         * The observations by their index.
+         */
+        private final List<Observation> atoms;
+        /**
+         * The observations of each test result to be covered.
+         */
+        private final int[][] rows;
+        /**
+         * The observations chosen on the current path.
+         */
+        private final long[] chosen;
+        /**
+         * The observations that must not be chosen on the current path.
+         */
+        private final long[] excluded;
+        /**
+         * The cheapest complete contract found so far.
+         */
+        private long[] best;
+        /**
+         * The total value of the cheapest complete contract found so far.
+         */
+        private long best_value;
+
+        /**
+         * @param testResults  The test results to be covered.
+         * @param observations All observations.
+         */
+        private Search(List<TestResult> testResults, Set<Observation> observations) {
+            // cheap observations first, so branches are ordered by value
+            atoms = observations.stream().sorted(Comparator.comparingInt(Observation::getValue)).toList();
+            Map<Observation, Integer> index = new HashMap<>();
+            for (Observation obs : atoms) index.put(obs, index.size());
+            rows = testResults.stream()
+                    .map(res -> res.getPossibleObservations().stream().mapToInt(index::get).distinct().sorted().toArray())
+                    .toArray(int[][]::new);
+            chosen = new long[BitUtils.words(atoms.size())];
+            excluded = new long[BitUtils.words(atoms.size())];
         }
-        return possibilities;
-    }
 
-    /**
-     * @param predicate  A predicate the set needs to satisfy.
-     * @param comparator A comparator to compare multiple sets.
-     * @param set        The set of possibilities.
-     * @param <T>        The type of each element.
-     * @return The cheapest subset that satiisfies the predicate.
-     */
-    private static <T> Set<T> setCover(Predicate<Set<T>> predicate, Comparator<Set<T>> comparator, Set<T> set) {
-        Set<Set<T>> possibilities = enumeratePossibilities(set);
-        return possibilities.stream().sorted(comparator).filter(predicate).findFirst().orElse(null);
+        /**
+         * @param incumbent A contract covering all rows.
+         * @return The cheapest contract covering all rows.
+         */
+        private Set<Observation> run(Set<Observation> incumbent) {
+            best = new long[chosen.length];
+            best_value = 0;
+            for (int atom = 0; atom < atoms.size(); atom++) {
+                if (incumbent.contains(atoms.get(atom))) {
+                    BitUtils.set(best, atom);
+                    best_value += atoms.get(atom).getValue();
+                }
+            }
+            search(0);
+            Set<Observation> contract = new HashSet<>();
+            for (int atom = 0; atom < atoms.size(); atom++) {
+                if (BitUtils.get(best, atom)) contract.add(atoms.get(atom));
+            }
+            return contract;
+        }
+
+        /**
+         * Expands the current node and restores it afterwards.
+         *
+         * @param value The total value of the chosen observations.
+         */
+        private void search(long value) {
+            int row = branchingRow();
+            if (row < 0) {
+                // all rows are covered, supersets are never expanded
+                if (value < best_value) {
+                    best = chosen.clone();
+                    best_value = value;
+                }
+                return;
+            }
+            List<Integer> branched = new ArrayList<>();
+            for (int atom : rows[row]) {
+                if (BitUtils.get(excluded, atom)) continue;
+                BitUtils.set(chosen, atom);
+                long next = value + atoms.get(atom).getValue();
+                long remaining = lowerBound();
+                if (remaining != Long.MAX_VALUE && next + remaining < best_value) search(next);
+                BitUtils.clear(chosen, atom);
+                // later branches must not choose this observation again
+                BitUtils.set(excluded, atom);
+                branched.add(atom);
+            }
+            for (int atom : branched) BitUtils.clear(excluded, atom);
+        }
+
+        /**
+         * @return The uncovered row with the fewest allowed observations or -1 if all rows are covered.
+         */
+        private int branchingRow() {
+            int best = -1;
+            int best_count = Integer.MAX_VALUE;
+            for (int row = 0; row < rows.length; row++) {
+                if (isCovered(row)) continue;
+                int count = 0;
+                for (int atom : rows[row]) {
+                    if (!BitUtils.get(excluded, atom)) count++;
+                }
+                if (count < best_count) {
+                    best = row;
+                    best_count = count;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * As every uncovered row needs one of its allowed observations, the cheapest of them is needed at least.
+         *
+         * @return A lower bound of the value still needed or {@link Long#MAX_VALUE} if a row cannot be covered anymore.
+         */
+        private long lowerBound() {
+            long bound = 0;
+            for (int row = 0; row < rows.length; row++) {
+                if (isCovered(row)) continue;
+                long cheapest = Long.MAX_VALUE;
+                // the observations of each row are sorted by value
+                for (int atom : rows[row]) {
+                    if (!BitUtils.get(excluded, atom)) {
+                        cheapest = atoms.get(atom).getValue();
+                        break;
+                    }
+                }
+                if (cheapest == Long.MAX_VALUE) return Long.MAX_VALUE;
+                bound = Math.max(bound, cheapest);
+            }
+            return bound;
+        }
+
+        /**
+         * @param row The index of the row.
+         * @return Whether one of the chosen observations covers the row.
+         */
+        private boolean isCovered(int row) {
+            for (int atom : rows[row]) {
+                if (BitUtils.get(chosen, atom)) return true;
+            }
+            return false;
+        }
     }
 }
@@ -1,6 +1,6 @@
 package contractgen.updater;
 
-import contractgen.Contract;
+import contractgen.Coverage;
 import contractgen.Observation;
 import contractgen.TestResult;
 import contractgen.Updater;
@@ -11,6 +11,8 @@ import java.util.stream.Collectors;
 /**
  * Iteratively computes the contract and afterwards removing observations leading to many false positives
  * if the contract is still valid.
+ * <p>
+ * The computation stops with a {@link java.util.concurrent.CancellationException} once its thread is interrupted.
  */
 public class TwoWayUpdater implements Updater {
 
@@ -24,19 +26,23 @@ public class TwoWayUpdater implements Updater {
         testResults.stream().filter(TestResult::isAdversaryDistinguishable).forEach(pe -> positive.addAll(pe.getPossibleObservations()));
         Map<Observation, Long> values = toMap(positive);
         List<Observation> sorted_obs = negative.stream().sorted(Comparator.comparingInt(a -> Math.toIntExact(values.getOrDefault(a, 0L)))).toList();
-        new_contract = new HashSet<>();
+        // each step only touches the test results of the added or removed observation
+        Coverage coverage = new Coverage(testResults);
         int i = 0;
-        while (!Contract.coversAll(testResults, new_contract)) {
-            new_contract.add(sorted_obs.get(i));
+        while (!coverage.coversAll()) {
+            GreedyUpdater.checkInterrupted();
+            coverage.choose(sorted_obs.get(i));
             i++;
         }
-        List<Observation> ctr = new_contract.stream().sorted(Comparator.comparingInt(Observation::getValue)).toList();
+        List<Observation> ctr = coverage.getContract().stream().sorted(Comparator.comparingInt(Observation::getValue)).toList();
         for (int j = ctr.size() - 1;  j >= 0; j--) {
-            new_contract.remove(ctr.get(j));
-            if (!Contract.coversAll(testResults, new_contract)) {
-                new_contract.add(ctr.get(j));
+            GreedyUpdater.checkInterrupted();
+            coverage.drop(ctr.get(j));
+            if (!coverage.coversAll()) {
+                coverage.choose(ctr.get(j));
             }
         }
+        new_contract = new HashSet<>(coverage.getContract());
         return new_contract;
     }
 
@@ -0,0 +1,92 @@
+package contractgen.util;
+
+/**
+ * Util methods related to bitsets stored as arrays of longs.
+ */
+public class BitUtils {
+
+    /**
+     * @param size The number of bits.
+     * @return The number of longs needed to store the bits.
+     */
+    public static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * @param bits  The bitset.
+     * @param index The index of the bit.
+     */
+    public static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * @param bits  The bitset.
+     * @param index The index of the bit.
+     */
+    public static void clear(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * @param bits  The bitset.
+     * @param index The index of the bit.
+     * @return Whether the bit is set, bits beyond the array are not set.
+     */
+    public static boolean get(long[] bits, int index) {
+        return index >= 0 && (index >>> 6) < bits.length && (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @param a The first bitset.
+     * @param b The second bitset.
+     * @return Whether both bitsets share at least one bit.
+     */
+    public static boolean intersects(long[] a, long[] b) {
+        int words = Math.min(a.length, b.length);
+        for (int i = 0; i < words; i++) {
+            if ((a[i] & b[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param a The first bitset.
+     * @param b The second bitset.
+     * @return Whether every bit of the first bitset is also set in the second one.
+     */
+    public static boolean isSubset(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & ~(i < b.length ? b[i] : 0)) != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param a The first bitset.
+     * @param b The second bitset.
+     * @return Whether both bitsets contain the same bits, regardless of trailing zero words.
+     */
+    public static boolean equals(long[] a, long[] b) {
+        int words = Math.max(a.length, b.length);
+        for (int i = 0; i < words; i++) {
+            if ((i < a.length ? a[i] : 0) != (i < b.length ? b[i] : 0)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param bits The bitset.
+     * @return A hash code consistent with {@link #equals(long[], long[])}.
+     */
+    public static int hashCode(long[] bits) {
+        int last = bits.length;
+        while (last > 0 && bits[last - 1] == 0) last--;
+        int hash = 1;
+        for (int i = 0; i < last; i++) {
+            hash = 31 * hash + Long.hashCode(bits[i]);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,215 @@
+package contractgen.util;
+
+import contractgen.util.vcd.Module;
+import contractgen.util.vcd.Wire;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A testbench compiled into a shared library and simulated within this process through its C interface.
+ * <p>
+ * Test cases are written into the memories of the model instead of files. During the simulation, the model records the
+ * values of all watched signals whenever a trigger signal changes, and the records are read back as a trace in which
+ * the n-th record happens at time n. Hence, no simulator process is started and no trace is written or parsed.
+ * <p>
+ * Every model has its own simulation context and is meant to be used by a single thread at a time.
+ */
+public class NativeModel implements AutoCloseable {
+
+    /**
+     * The verdict of a simulation in which the contract and the attacker agree that the executions are equal.
+     */
+    public static final int SUCCESS = 1;
+    /**
+     * The verdict of a simulation in which the attacker distinguishes executions the contract considers equal.
+     */
+    public static final int FAIL = 2;
+    /**
+     * The verdict of a simulation in which the contract distinguishes executions the attacker considers equal.
+     */
+    public static final int FALSE_POSITIVE = 3;
+    /**
+     * The verdict of a simulation that did not finish in time.
+     */
+    public static final int TIMEOUT = 4;
+
+    /**
+     * The arena of the library, shared so the model can be closed by another thread.
+     */
+    private final Arena arena = Arena.ofShared();
+    /**
+     * The functions of the C interface.
+     */
+    private final MethodHandle destroy, reset, watch, width, load_program, step_until_done, record_count, record, read_signal;
+    /**
+     * The model or null once closed.
+     */
+    private MemorySegment model;
+    /**
+     * The hierarchical names of the watched signals by their index within a record.
+     */
+    private final List<String> signals = new ArrayList<>();
+
+    /**
+     * @param library The shared library of the testbench.
+     */
+    public NativeModel(Path library) {
+        SymbolLookup lookup = SymbolLookup.libraryLookup(library, arena);
+        Linker linker = Linker.nativeLinker();
+        MethodHandle create = function(linker, lookup, "model_create", FunctionDescriptor.of(ValueLayout.ADDRESS));
+        destroy = function(linker, lookup, "model_destroy", FunctionDescriptor.ofVoid(ValueLayout.ADDRESS));
+        reset = function(linker, lookup, "model_reset", FunctionDescriptor.ofVoid(ValueLayout.ADDRESS));
+        watch = function(linker, lookup, "model_watch", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+        width = function(linker, lookup, "model_width", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+        load_program = function(linker, lookup, "model_load_program", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+        step_until_done = function(linker, lookup, "model_step_until_done", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+        record_count = function(linker, lookup, "model_record_count", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
+        record = function(linker, lookup, "model_record", FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        read_signal = function(linker, lookup, "model_read_signal", FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.ADDRESS));
+        try {
+            model = (MemorySegment) create.invokeExact();
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param linker     The linker.
+     * @param lookup     The symbols of the library.
+     * @param name       The name of the function.
+     * @param descriptor The signature of the function.
+     * @return A handle calling the function.
+     */
+    private static MethodHandle function(Linker linker, SymbolLookup lookup, String name, FunctionDescriptor descriptor) {
+        MemorySegment symbol = lookup.find(name).orElseThrow(() -> new IllegalArgumentException("The library lacks the function " + name + "."));
+        return linker.downcallHandle(symbol, descriptor);
+    }
+
+    /**
+     * Records the value of a signal in every record, the records taken so far are discarded.
+     *
+     * @param path    The hierarchical name of the signal, e.g. top.control.retire_count.
+     * @param trigger Whether a change of the signal takes a record.
+     */
+    public void watch(String path, boolean trigger) {
+        try (Arena call = Arena.ofConfined()) {
+            int index = (int) watch.invokeExact(model, call.allocateFrom(path), trigger ? 1 : 0);
+            if (index < 0)
+                throw new IllegalArgumentException("The model has no signal " + path + ".");
+            signals.add(path);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Resets the design including its memories to its state right after time 0 without building it again and takes
+     * the initial record.
+     */
+    public void reset() {
+        try {
+            reset.invokeExact(model);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param path   The hierarchical name of the memory, e.g. top.instr_mem_1.mem.
+     * @param offset The index of the first word to be written.
+     * @param words  The words to be written.
+     */
+    public void loadProgram(String path, int offset, int[] words) {
+        try (Arena call = Arena.ofConfined()) {
+            MemorySegment segment = call.allocateFrom(ValueLayout.JAVA_INT, words);
+            int result = (int) load_program.invokeExact(model, call.allocateFrom(path), offset, segment, words.length);
+            if (result != 0)
+                throw new IllegalArgumentException("The model has no memory " + path + " holding " + words.length + " words at " + offset + ".");
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param maxTime The time limit of the simulation in simulation time units after the latest reset.
+     * @return The verdict of the testbench, one of {@link #SUCCESS}, {@link #FAIL}, {@link #FALSE_POSITIVE} or
+     * {@link #TIMEOUT}.
+     */
+    public int stepUntilDone(long maxTime) {
+        try {
+            return (int) step_until_done.invokeExact(model, maxTime);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param path The hierarchical name of any signal.
+     * @return The current value of the signal, 0 if there is no such signal.
+     */
+    public long readSignal(String path) {
+        try (Arena call = Arena.ofConfined()) {
+            return (long) read_signal.invokeExact(model, call.allocateFrom(path));
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The records of the latest simulation as a trace, in which the n-th record happens at time n and the
+     * watched signals are the wires of their modules.
+     */
+    public Module getTrace() {
+        try {
+            int records = (int) record_count.invokeExact(model);
+            Module top = null;
+            for (int signal = 0; signal < signals.size(); signal++) {
+                String[] names = signals.get(signal).split("\\.");
+                if (top == null) top = new Module(null, names[0]);
+                Module module = top;
+                for (int i = 1; i < names.length - 1; i++) {
+                    Module child = module.getChild(names[i]);
+                    if (child == null) {
+                        child = new Module(module, names[i]);
+                        module.addChild(child);
+                    }
+                    module = child;
+                }
+                Wire wire = new Wire(names[names.length - 1], signals.get(signal), (int) width.invokeExact(model, signal));
+                for (int r = 0; r < records; r++) {
+                    wire.addValue(r, (long) record.invokeExact(model, r, signal));
+                }
+                module.addWire(wire);
+            }
+            return top;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (model == null) return;
+        try {
+            destroy.invokeExact(model);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            model = null;
+            arena.close();
+        }
+    }
+}
@@ -1,17 +1,23 @@
 package contractgen.util;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Util methods related to manipulating strings.
  */
 public class StringUtils {
 
+    /**
+     * The hexadecimal digits.
+     */
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
     /**
      * @param hexStr The value encoded in hexadecimal.
      * @return The value encoded in binary.
      */
     public static String toBinaryEncoding(String hexStr) {
-        long decimal = Long.parseLong(hexStr, 16);
-        return String.format("%32s", Long.toBinaryString(decimal)).replace(' ', '0');
+        return toBinaryEncoding(Long.parseLong(hexStr, 16));
     }
 
     /**
@@ -19,8 +25,7 @@ public class StringUtils {
      * @return The value encoded in hexadecimal.
      */
     public static String toHexEncoding(String binaryStr) {
-        long decimal = Long.parseLong(binaryStr, 2);
-        return String.format("%8s", Long.toHexString(decimal)).replace(' ', '0');
+        return toHexEncoding(Long.parseLong(binaryStr, 2));
     }
 
     /**
@@ -28,7 +33,10 @@ public class StringUtils {
      * @return The value encoded in hexadecimal.
      */
     public static String toHexEncoding(Long value) {
-        return String.format("%8s", Long.toHexString(value)).replace(' ', '0');
+        int digits = Math.max(8, (Math.max(1, 64 - Long.numberOfLeadingZeros(value)) + 3) / 4);
+        byte[] buffer = new byte[digits];
+        writeHex(value, digits, buffer, 0);
+        return new String(buffer, StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -36,7 +44,44 @@ public class StringUtils {
      * @return The value encoded in binary.
      */
     public static String toBinaryEncoding(Long value) {
-        return String.format("%32s", Long.toBinaryString(value)).replace(' ', '0');
+        int digits = Math.max(32, 64 - Long.numberOfLeadingZeros(value));
+        byte[] buffer = new byte[digits];
+        writeBinary(value, digits, buffer, 0);
+        return new String(buffer, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writes the lowest digits of a value in hexadecimal, padded with zeros.
+     *
+     * @param value  The value.
+     * @param digits The number of digits to be written.
+     * @param buffer The buffer to write to.
+     * @param offset The position of the first digit within the buffer.
+     * @return The position after the last digit.
+     */
+    public static int writeHex(long value, int digits, byte[] buffer, int offset) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        return offset + digits;
+    }
+
+    /**
+     * Writes the lowest digits of a value in binary, padded with zeros.
+     *
+     * @param value  The value.
+     * @param digits The number of digits to be written.
+     * @param buffer The buffer to write to.
+     * @param offset The position of the first digit within the buffer.
+     * @return The position after the last digit.
+     */
+    public static int writeBinary(long value, int digits, byte[] buffer, int offset) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + (value & 0x1));
+            value >>>= 1;
+        }
+        return offset + digits;
     }
 
     /**
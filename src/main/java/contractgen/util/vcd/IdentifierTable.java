@@ -0,0 +1,93 @@
+package contractgen.util.vcd;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the identifier codes of a vcd trace to their wires without creating a string per lookup.
+ * Short identifiers are packed into a long and stored in an open addressing table.
+ */
+class IdentifierTable {
+
+    /**
+     * The maximal length of an identifier that can be packed into a long.
+     */
+    private static final int MAX_PACKED_LENGTH = 9;
+
+    /**
+     * The packed identifiers, zero marks an empty slot.
+     */
+    private final long[] keys;
+    /**
+     * The wires belonging to the identifiers.
+     */
+    private final Wire[] values;
+    /**
+     * Identifiers too long to be packed.
+     */
+    private final Map<String, Wire> overflow = new HashMap<>();
+
+    /**
+     * @param wires The wires identified by their identifier code.
+     */
+    IdentifierTable(Map<String, Wire> wires) {
+        int capacity = Integer.highestOneBit(Math.max(wires.size(), 1) * 4);
+        keys = new long[capacity];
+        values = new Wire[capacity];
+        wires.forEach((id, wire) -> {
+            byte[] bytes = id.getBytes(StandardCharsets.ISO_8859_1);
+            long key = pack(bytes, 0, bytes.length);
+            if (key == 0) {
+                overflow.put(id, wire);
+                return;
+            }
+            int slot = slot(key);
+            while (keys[slot] != 0 && keys[slot] != key) slot = (slot + 1) & (keys.length - 1);
+            keys[slot] = key;
+            values[slot] = wire;
+        });
+    }
+
+    /**
+     * @param bytes  The buffer containing the identifier.
+     * @param offset The start of the identifier.
+     * @param length The length of the identifier.
+     * @return The wire or null if there is none.
+     */
+    Wire get(byte[] bytes, int offset, int length) {
+        long key = pack(bytes, offset, length);
+        if (key == 0) return overflow.get(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) return values[slot];
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return null;
+    }
+
+    /**
+     * @param key The packed identifier.
+     * @return The preferred slot of the identifier.
+     */
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+    }
+
+    /**
+     * @param bytes  The buffer containing the identifier.
+     * @param offset The start of the identifier.
+     * @param length The length of the identifier.
+     * @return The identifier packed into a long or zero if it cannot be packed.
+     */
+    private static long pack(byte[] bytes, int offset, int length) {
+        if (length == 0 || length > MAX_PACKED_LENGTH) return 0;
+        long key = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] <= 0) return 0;
+            key = (key << 7) | bytes[i];
+        }
+        return key;
+    }
+}
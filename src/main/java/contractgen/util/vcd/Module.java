@@ -45,6 +45,13 @@ public class Module {
         return name;
     }
 
+    /**
+     * @return The hierarchical path of the module, e.g. top.ctr.
+     */
+    public String getPath() {
+        return parent == null ? name : parent.getPath() + "." + name;
+    }
+
     /**
      * @param w Add a wire to this module.
      */
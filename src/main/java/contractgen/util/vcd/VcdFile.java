@@ -1,8 +1,16 @@
 package contractgen.util.vcd;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,32 +39,96 @@ public class VcdFile {
      * The current module (used while parsing).
      */
     private Module current = null;
+    /**
+     * Whether the definitions are within the scope Verilator wraps around the top module (used while parsing).
+     */
+    private boolean in_wrapper = false;
+
+    /**
+     * The name of the scope Verilator wraps around the top module, which is not part of the module tree.
+     */
+    private static final String VERILATOR_WRAPPER = "TOP";
 
     /**
      * The current time (used while parsing).
      */
-    private Integer time = null;
+    private int time = 0;
 
     /**
      * The pattern to identify variables.
      */
     private final Pattern varPattern = Pattern.compile("\\s?(.*?) (.*?) (.*?) (.*?)( .*|$)");
 
+    /**
+     * Placeholder for wires whose value changes are skipped.
+     */
+    private static final Wire SKIPPED = new Wire("", "", 0);
+
     /**
      * The set of wires in the vcd file.
      */
     private final Map<String, Wire> wires = new HashMap<>();
 
+    /**
+     * Selects the wires whose value changes are stored, identified by their hierarchical path, or null to store all.
+     */
+    private final Predicate<String> selection;
+
+    /**
+     * The identifiers of the wires whose value changes are stored.
+     */
+    private final Set<String> selected = new HashSet<>();
+
     /**
      * @param s The vcd trace to be parsed.
      */
     public VcdFile(String s) {
-        String[] lines = s.split("\\$enddefinitions\\s*\\$end\n");
-        assert lines.length == 2;
-        String definitions = lines[0];
-        String simulation = lines[1];
-        parseDefinitions(definitions);
-        parseSimulation(simulation);
+        this.selection = null;
+        try {
+            parse(new VcdTokenizer(s.getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parses the trace in a single pass over the memory-mapped file.
+     *
+     * @param path The path of the vcd trace to be parsed.
+     * @throws IOException On filesystem errors.
+     */
+    public VcdFile(Path path) throws IOException {
+        this(path, null);
+    }
+
+    /**
+     * Parses the trace in a single pass over the memory-mapped file, but only stores the value changes of selected wires.
+     * All other wires are still part of the module tree, but do not hold any values.
+     *
+     * @param path      The path of the vcd trace to be parsed.
+     * @param selection Selects the wires to be loaded by their hierarchical path, e.g. top.ctr.instr_1_i, or null to load all.
+     * @throws IOException On filesystem errors.
+     */
+    public VcdFile(Path path, Predicate<String> selection) throws IOException {
+        this.selection = selection;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            parse(new VcdTokenizer(channel));
+        }
+    }
+
+    /**
+     * @param paths The hierarchical paths of wires or scopes, e.g. top.ctr.instr_1_i or top.control.
+     * @return A selection of all wires with one of the given paths or within one of the given scopes.
+     */
+    public static Predicate<String> selecting(Collection<String> paths) {
+        Set<String> exact = new HashSet<>(paths);
+        return path -> {
+            if (exact.contains(path)) return true;
+            for (int i = path.lastIndexOf('.'); i > 0; i = path.lastIndexOf('.', i - 1)) {
+                if (exact.contains(path.substring(0, i))) return true;
+            }
+            return false;
+        };
     }
 
     /**
@@ -68,39 +140,96 @@ public class VcdFile {
 
 
     /**
-     * @param simulation the simulation part of the VCD file.
+     * @param tokens The tokens of the vcd trace.
+     * @throws IOException On filesystem errors.
      */
-    private void parseSimulation(String simulation) {
-        List<String> lines = List.of(simulation.split("\n"));
-        Pattern p = Pattern.compile("b([01xzXZ]*) ?(.*)|([01xzXZ]) ?(.*)");
-        Pattern timePattern = Pattern.compile("#\\d*");
-        Pattern infoStatement = Pattern.compile("\\$comment.*\\$end|\\$dumpall|\\$dumpvars|\\$end");
-        for (String line : lines) {
-            if (timePattern.matcher(line).matches()) {
-                time = Integer.parseInt(line.substring(1));
-            } else {
-                Matcher m = p.matcher(line);
-                if (!m.find()) {
-                    if (infoStatement.matcher(line).matches()) continue;
-                    System.out.println("Unexpected line " + line);
-                    continue;
+    private void parse(VcdTokenizer tokens) throws IOException {
+        parseDefinitions(tokens);
+        parseSimulation(tokens);
+    }
+
+    /**
+     * @param tokens The tokens of the simulation part of the VCD file.
+     * @throws IOException On filesystem errors.
+     */
+    private void parseSimulation(VcdTokenizer tokens) throws IOException {
+        Map<String, Wire> loaded = new HashMap<>(wires.size());
+        wires.forEach((id, wire) -> loaded.put(id, selected.contains(id) ? wire : SKIPPED));
+        IdentifierTable identifiers = new IdentifierTable(loaded);
+        while (tokens.next()) {
+            byte first = tokens.byteAt(0);
+            switch (first) {
+                case '#' -> time = tokens.asInt(1);
+                case '$' -> {
+                    // ignoring $dumpvars, $dumpall, $dumpon, $dumpoff and $end
+                    if (tokens.is("$comment")) skipToEnd(tokens);
+                }
+                case 'b', 'B', 'r', 'R' -> {
+                    int length = tokens.length();
+                    byte[] value = tokens.swap();
+                    if (!tokens.next())
+                        throw new IllegalStateException("Missing identifier for value " + new String(value, 1, length - 1, StandardCharsets.ISO_8859_1));
+                    Wire wire = lookup(identifiers, tokens, 0);
+                    if (wire != SKIPPED)
+                        wire.addValue(time, value, 1, length - 1);
                 }
-                String value = m.group(1) == null ? m.group(3) : m.group(1);
-                String name = m.group(2) == null ? m.group(4) : m.group(2);
-                if (!wires.containsKey(name))
-                    throw new IllegalStateException("Wire " + name + " not found.");
-                wires.get(name).values.put(time, value);
+                case '0', '1', 'x', 'X', 'z', 'Z' -> {
+                    Wire wire = lookup(identifiers, tokens, 1);
+                    if (wire != SKIPPED)
+                        wire.addValue(time, tokens.bytes(), 0, 1);
+                }
+                default -> System.out.println("Unexpected token " + tokens.asString(0));
             }
         }
+        wires.values().forEach(Wire::buildIndex);
     }
 
     /**
-     * @param definitions the definition part of the VCD file.
+     * @param identifiers The table of identifiers.
+     * @param tokens      The tokens of the VCD file.
+     * @param offset      The start of the identifier within the current token.
+     * @return The wire identified by the current token.
      */
-    private void parseDefinitions(String definitions) {
-        Pattern p = Pattern.compile("\\$(.*?)(?: (.*?) | )\\$end\\n?");
-        Matcher m = p.matcher(definitions);
-        m.results().forEach(res -> parseDefinition(res.group(1), res.group(2)));
+    private static Wire lookup(IdentifierTable identifiers, VcdTokenizer tokens, int offset) {
+        Wire wire = identifiers.get(tokens.bytes(), offset, tokens.length() - offset);
+        if (wire == null)
+            throw new IllegalStateException("Wire " + tokens.asString(offset) + " not found.");
+        return wire;
+    }
+
+    /**
+     * @param tokens The tokens of the definition part of the VCD file.
+     * @throws IOException On filesystem errors.
+     */
+    private void parseDefinitions(VcdTokenizer tokens) throws IOException {
+        while (tokens.next()) {
+            if (tokens.byteAt(0) != '$')
+                throw new IllegalStateException("Unexpected token " + tokens.asString(0) + " in definitions.");
+            if (tokens.is("$enddefinitions")) {
+                skipToEnd(tokens);
+                return;
+            }
+            String name = tokens.asString(1);
+            StringBuilder content = null;
+            while (tokens.next() && !tokens.is("$end")) {
+                if (content == null) content = new StringBuilder();
+                else content.append(' ');
+                content.append(tokens.asString(0));
+            }
+            parseDefinition(name, content == null ? null : content.toString());
+        }
+    }
+
+    /**
+     * Skips all tokens up to and including the next $end.
+     *
+     * @param tokens The tokens of the VCD file.
+     * @throws IOException On filesystem errors.
+     */
+    private static void skipToEnd(VcdTokenizer tokens) throws IOException {
+        while (tokens.next()) {
+            if (tokens.is("$end")) return;
+        }
     }
 
     /**
@@ -119,7 +248,9 @@ public class VcdFile {
             Pattern p = Pattern.compile("(.*) (.*)");
             Matcher m = p.matcher(content);
             if (m.find()) {
-                if (m.group(1).equals("module") || m.group(1).equals("function") || m.group(1).equals("begin")) {
+                if (current == null && top == null && !in_wrapper && m.group(2).equals(VERILATOR_WRAPPER)) {
+                    in_wrapper = true;
+                } else if (m.group(1).equals("module") || m.group(1).equals("function") || m.group(1).equals("begin")) {
                     Module module = new Module(current, m.group(2));
                     if (current == null) {
                         if (top != null) {
@@ -139,27 +270,32 @@ public class VcdFile {
         } else if ("timescale".equals(name)) {
             this.timescale = content;
         } else if ("upscope".equals(name)) {
-            current = current.getParent();
+            if (current == null) {
+                in_wrapper = false;
+            } else {
+                current = current.getParent();
+            }
         } else if ("var".equals(name)) {
             Matcher m = varPattern.matcher(content);
             if (m.find()) {
                 switch (m.group(1)) {
                     case "wire", "reg", "parameter" -> {
-                        if (current == null)
+                        if (current == null && !in_wrapper)
                             throw new IllegalStateException("Not in a scope.");
                         int width = Integer.parseInt(m.group(2));
                         String internal_name = m.group(3);
                         String wire_name = m.group(4);
                         Wire w = new Wire(wire_name, internal_name, width);
-                        current.addWire(w);
-                        wires.put(internal_name, w);
+                        // wires of the Verilator wrapper still receive values, but are not part of the module tree
+                        if (current != null) current.addWire(w);
+                        declare(w, internal_name);
                     }
                     case "integer", "event" -> {
                         int width = Integer.parseInt(m.group(2));
                         String internal_name = m.group(3);
                         String wire_name = m.group(4);
                         Wire w = new Wire(wire_name, internal_name, width);
-                        wires.put(internal_name, w);
+                        declare(w, internal_name);
                     }
                     default ->
                             throw new IllegalArgumentException("Unsupported var type " + m.group(1) + " in context " + content);
@@ -173,6 +309,22 @@ public class VcdFile {
 
     }
 
+    /**
+     * Registers a wire for its identifier. If several wires share an identifier, the last one receives the values.
+     *
+     * @param w             The wire.
+     * @param internal_name The identifier used in the VCD file.
+     */
+    private void declare(Wire w, String internal_name) {
+        wires.put(internal_name, w);
+        String path = current == null ? w.getName() : current.getPath() + "." + w.getName();
+        if (selection == null || selection.test(path)) {
+            selected.add(internal_name);
+        } else {
+            selected.remove(internal_name);
+        }
+    }
+
     @Override
     public String toString() {
         return "VcdFile{" +
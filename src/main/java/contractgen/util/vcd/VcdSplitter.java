@@ -0,0 +1,173 @@
+package contractgen.util.vcd;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the trace of a multi-instance testbench into one trace per instance.
+ * <p>
+ * Each instance is a scope named by a common prefix followed by its number, e.g. slot_0, slot_1 and so on. In the
+ * trace of an instance, its scope becomes the top module and all enclosing scopes are removed, so the trace reads as if
+ * the instance was simulated on its own. Value changes are only written to the traces of the instances declaring the
+ * changed wire, and times are only written when a value of the instance changes.
+ */
+public class VcdSplitter {
+
+    /**
+     * No instances.
+     */
+    private static final int[] NONE = new int[0];
+
+    /**
+     * @param source  The trace of the multi-instance testbench.
+     * @param prefix  The prefix of the scopes of the instances, followed by their number.
+     * @param targets The paths of the traces, indexed by the number of the instance.
+     * @throws IOException On filesystem errors.
+     */
+    public static void split(Path source, String prefix, List<Path> targets) throws IOException {
+        BufferedWriter[] writers = new BufferedWriter[targets.size()];
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.ISO_8859_1)) {
+            for (int i = 0; i < writers.length; i++) {
+                Files.createDirectories(targets.get(i).toAbsolutePath().getParent());
+                writers[i] = Files.newBufferedWriter(targets.get(i), StandardCharsets.ISO_8859_1);
+            }
+            Map<String, int[]> instances = splitDefinitions(reader, prefix, writers);
+            splitSimulation(reader, instances, writers);
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null) writer.close();
+            }
+        }
+    }
+
+    /**
+     * @param reader  The trace positioned at its start.
+     * @param prefix  The prefix of the scopes of the instances.
+     * @param writers The traces of the instances.
+     * @return The instances declaring each identifier.
+     * @throws IOException On filesystem errors.
+     */
+    private static Map<String, int[]> splitDefinitions(BufferedReader reader, String prefix, BufferedWriter[] writers) throws IOException {
+        Map<String, int[]> instances = new HashMap<>();
+        int depth = 0;
+        int instance = -1;
+        int instance_depth = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("$scope")) {
+                depth++;
+                String[] tokens = trimmed.split("\\s+");
+                if (instance < 0 && tokens.length > 2 && tokens[2].startsWith(prefix)) {
+                    int number = parseNumber(tokens[2].substring(prefix.length()));
+                    if (number >= 0 && number < writers.length) {
+                        instance = number;
+                        instance_depth = depth;
+                        writeLine(writers[instance], "$scope module top $end");
+                        continue;
+                    }
+                }
+                if (instance >= 0) writeLine(writers[instance], line);
+            } else if (trimmed.startsWith("$upscope")) {
+                if (instance >= 0) writeLine(writers[instance], line);
+                if (depth == instance_depth) instance = -1;
+                depth--;
+            } else if (trimmed.startsWith("$var")) {
+                if (instance < 0) continue;
+                writeLine(writers[instance], line);
+                String[] tokens = trimmed.split("\\s+");
+                int[] declaring = instances.getOrDefault(tokens[3], NONE);
+                if (declaring.length == 0 || declaring[declaring.length - 1] != instance) {
+                    declaring = Arrays.copyOf(declaring, declaring.length + 1);
+                    declaring[declaring.length - 1] = instance;
+                    instances.put(tokens[3], declaring);
+                }
+            } else if (depth == 0) {
+                // properties like $date, $version and $timescale as well as $enddefinitions
+                for (BufferedWriter writer : writers) writeLine(writer, line);
+                if (trimmed.startsWith("$enddefinitions")) return instances;
+            }
+        }
+        throw new IllegalStateException("The trace has no end of definitions.");
+    }
+
+    /**
+     * @param reader    The trace positioned after its definitions.
+     * @param instances The instances declaring each identifier.
+     * @param writers   The traces of the instances.
+     * @throws IOException On filesystem errors.
+     */
+    private static void splitSimulation(BufferedReader reader, Map<String, int[]> instances, BufferedWriter[] writers) throws IOException {
+        String time = null;
+        boolean[] time_written = new boolean[writers.length];
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            char first = line.charAt(0);
+            if (first == '#') {
+                time = line;
+                Arrays.fill(time_written, false);
+            } else if (first == '$') {
+                // keywords like $dumpvars and $end are kept in every trace
+                for (int i = 0; i < writers.length; i++) {
+                    writeTime(writers[i], time, time_written, i);
+                    writeLine(writers[i], line);
+                }
+            } else {
+                String identifier = switch (first) {
+                    case 'b', 'B', 'r', 'R' -> line.substring(line.indexOf(' ') + 1).trim();
+                    default -> line.substring(1).trim();
+                };
+                for (int i : instances.getOrDefault(identifier, NONE)) {
+                    writeTime(writers[i], time, time_written, i);
+                    writeLine(writers[i], line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the current time to the trace of an instance before its first value change at that time.
+     *
+     * @param writer       The trace of the instance.
+     * @param time         The current time or null if no time was given yet.
+     * @param time_written Whether the current time was written to the trace of each instance.
+     * @param instance     The number of the instance.
+     * @throws IOException On filesystem errors.
+     */
+    private static void writeTime(BufferedWriter writer, String time, boolean[] time_written, int instance) throws IOException {
+        if (time == null || time_written[instance]) return;
+        writeLine(writer, time);
+        time_written[instance] = true;
+    }
+
+    /**
+     * @param writer The trace.
+     * @param line   The line to be written.
+     * @throws IOException On filesystem errors.
+     */
+    private static void writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+    }
+
+    /**
+     * @param s The string.
+     * @return The non-negative number represented by the string or -1.
+     */
+    private static int parseNumber(String s) {
+        if (s.isEmpty() || s.length() > 9) return -1;
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) return -1;
+        }
+        return Integer.parseInt(s);
+    }
+}
@@ -0,0 +1,187 @@
+package contractgen.util.vcd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a vcd trace into whitespace separated tokens without creating intermediate strings.
+ * Files are memory-mapped in windows, so traces larger than a single mapping can be read as well.
+ */
+class VcdTokenizer {
+
+    /**
+     * The maximal size of a single memory mapped window.
+     */
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    /**
+     * The channel of the trace or null if the trace is held in memory.
+     */
+    private final FileChannel channel;
+    /**
+     * The total size of the trace in bytes.
+     */
+    private final long size;
+    /**
+     * The currently mapped part of the trace.
+     */
+    private ByteBuffer buffer;
+    /**
+     * The position of the current window within the trace.
+     */
+    private long base;
+
+    /**
+     * The bytes of the current token.
+     */
+    private byte[] token = new byte[64];
+    /**
+     * A second buffer to allow keeping the previous token while reading the next one.
+     */
+    private byte[] spare = new byte[64];
+    /**
+     * The length of the current token.
+     */
+    private int length = 0;
+
+    /**
+     * @param channel The channel of the trace to be read.
+     * @throws IOException On filesystem errors.
+     */
+    VcdTokenizer(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.base = 0;
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_SIZE, size));
+    }
+
+    /**
+     * @param content The trace to be read.
+     */
+    VcdTokenizer(byte[] content) {
+        this.channel = null;
+        this.size = content.length;
+        this.base = 0;
+        this.buffer = ByteBuffer.wrap(content);
+    }
+
+    /**
+     * @return Whether there are unread bytes left.
+     * @throws IOException On filesystem errors.
+     */
+    private boolean hasRemaining() throws IOException {
+        if (buffer.hasRemaining()) return true;
+        if (channel == null || base + buffer.limit() >= size) return false;
+        base += buffer.limit();
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(WINDOW_SIZE, size - base));
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * Reads the next token.
+     *
+     * @return Whether a token could be read.
+     * @throws IOException On filesystem errors.
+     */
+    boolean next() throws IOException {
+        length = 0;
+        while (hasRemaining()) {
+            byte b = buffer.get();
+            if (b > ' ') {
+                append(b);
+                break;
+            }
+        }
+        if (length == 0) return false;
+        while (hasRemaining()) {
+            byte b = buffer.get();
+            if (b <= ' ') break;
+            append(b);
+        }
+        return true;
+    }
+
+    /**
+     * @param b The byte to be appended to the current token.
+     */
+    private void append(byte b) {
+        if (length == token.length) {
+            byte[] grown = new byte[token.length * 2];
+            System.arraycopy(token, 0, grown, 0, length);
+            token = grown;
+        }
+        token[length++] = b;
+    }
+
+    /**
+     * @return The length of the current token.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * @param i The index within the current token.
+     * @return The byte at the given index.
+     */
+    byte byteAt(int i) {
+        return token[i];
+    }
+
+    /**
+     * @return The buffer holding the current token, only valid until the next token is read.
+     */
+    byte[] bytes() {
+        return token;
+    }
+
+    /**
+     * Hands out the buffer of the current token and continues reading into a second buffer.
+     *
+     * @return The buffer holding the current token, valid until the next call of this method.
+     */
+    byte[] swap() {
+        byte[] current = token;
+        token = spare;
+        spare = current;
+        return current;
+    }
+
+    /**
+     * @param s The string to be compared.
+     * @return Whether the current token equals the given string.
+     */
+    boolean is(String s) {
+        if (s.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (token[i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param offset The first index to be included.
+     * @return The current token starting at the given offset as string.
+     */
+    String asString(int offset) {
+        return new String(token, offset, length - offset, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param offset The first index to be included.
+     * @return The current token starting at the given offset parsed as decimal number.
+     */
+    int asInt(int offset) {
+        if (offset >= length) throw new NumberFormatException("Empty number in vcd trace.");
+        int value = 0;
+        for (int i = offset; i < length; i++) {
+            int digit = token[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("Invalid number " + asString(offset) + " in vcd trace.");
+            value = Math.addExact(Math.multiplyExact(value, 10), digit);
+        }
+        return value;
+    }
+}
@@ -1,13 +1,15 @@
 package contractgen.util.vcd;
 
-import contractgen.util.StringUtils;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 /**
  * A wire in a vcd trace.
+ * <p>
+ * The value changes are stored in columns sorted by time. Every value is packed into two bit-planes,
+ * 0 = (0, 0), 1 = (1, 0), x = (0, 1) and z = (1, 1), together with the number of digits it was written with.
  */
 public class Wire {
 
@@ -24,9 +26,55 @@ public class Wire {
      */
     private final int width;
     /**
-     * The set of values, every value is valid until the next entry.
+     * The number of longs used to store a single value.
+     */
+    private final int words;
+
+    /**
+     * The number of stored value changes.
+     */
+    private int count = 0;
+    /**
+     * The times of the value changes in ascending order, every value is valid until the next entry.
+     */
+    private int[] times = new int[0];
+    /**
+     * The number of digits of each value.
+     */
+    private int[] lengths = new int[0];
+    /**
+     * The value bit-plane.
+     */
+    private long[] bits = new long[0];
+    /**
+     * The unknown bit-plane, set for x and z.
+     */
+    private long[] unknown = new long[0];
+    /**
+     * Values that cannot be packed, e.g. real values, or null if there are none.
+     */
+    private String[] raw = null;
+
+    /**
+     * Whether the indexes below reflect all stored value changes.
+     */
+    private boolean indexed = false;
+    /**
+     * The times at which the value actually changed in ascending order.
+     */
+    private int[] changeTimes;
+    /**
+     * The index of the first value that is no number or the number of changes if there is none.
+     */
+    private int firstNonNumber;
+    /**
+     * The numeric values seen before the first non-numeric value, hashed with open addressing.
+     */
+    private long[] valueKeys;
+    /**
+     * The index of the first change to each value in valueKeys or -1 for empty slots.
      */
-    Map<Integer, String> values = new HashMap<>();
+    private int[] valueFirst;
 
     /**
      * @param name          The name of the wire.
@@ -37,6 +85,7 @@ public class Wire {
         this.name = name;
         this.internal_name = internal_name;
         this.width = width;
+        this.words = Math.max(1, (width + 63) / 64);
     }
 
     /**
@@ -46,19 +95,273 @@ public class Wire {
         return name;
     }
 
+    /**
+     * @return The width of the wire.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Appends a value change, a change at the time of the latest change replaces it.
+     *
+     * @param time   The time of the change.
+     * @param value  The buffer containing the value as digits of 0, 1, x and z.
+     * @param offset The start of the value within the buffer.
+     * @param length The number of digits.
+     */
+    void addValue(int time, byte[] value, int offset, int length) {
+        indexed = false;
+        int i = slot(time);
+        int base = i * words;
+        Arrays.fill(bits, base, base + words, 0L);
+        Arrays.fill(unknown, base, base + words, 0L);
+        if (raw != null) raw[i] = null;
+        lengths[i] = length;
+        if (length > words * 64) {
+            storeRaw(i, value, offset, length);
+            return;
+        }
+        for (int k = 0; k < length; k++) {
+            int bit = length - 1 - k;
+            long mask = 1L << (bit & 63);
+            int word = base + (bit >>> 6);
+            switch (value[offset + k]) {
+                case '0' -> {
+                }
+                case '1' -> bits[word] |= mask;
+                case 'x', 'X' -> unknown[word] |= mask;
+                case 'z', 'Z' -> {
+                    bits[word] |= mask;
+                    unknown[word] |= mask;
+                }
+                default -> {
+                    storeRaw(i, value, offset, length);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a known value change, e.g. sampled from a simulation that writes no trace. A change at the time of the
+     * latest change replaces it.
+     *
+     * @param time  The time of the change.
+     * @param value The value, written with the width of the wire but at most 64 digits.
+     */
+    public void addValue(int time, long value) {
+        indexed = false;
+        int i = slot(time);
+        int base = i * words;
+        Arrays.fill(bits, base, base + words, 0L);
+        Arrays.fill(unknown, base, base + words, 0L);
+        if (raw != null) raw[i] = null;
+        lengths[i] = Math.min(width, 64);
+        bits[base] = width < 64 ? value & ((1L << width) - 1) : value;
+    }
+
+    /**
+     * @param time The time of the change.
+     * @return The index to store the change at.
+     */
+    private int slot(int time) {
+        if (count > 0 && times[count - 1] == time) return count - 1;
+        if (count > 0 && times[count - 1] > time)
+            throw new IllegalStateException("Value change of " + name + " at " + time + " after " + times[count - 1] + ".");
+        if (count == times.length) {
+            int capacity = Math.max(4, count * 2);
+            times = Arrays.copyOf(times, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            bits = Arrays.copyOf(bits, capacity * words);
+            unknown = Arrays.copyOf(unknown, capacity * words);
+            if (raw != null) raw = Arrays.copyOf(raw, capacity);
+        }
+        times[count] = time;
+        return count++;
+    }
+
+    /**
+     * @param i      The index of the change.
+     * @param value  The buffer containing the value.
+     * @param offset The start of the value within the buffer.
+     * @param length The length of the value.
+     */
+    private void storeRaw(int i, byte[] value, int offset, int length) {
+        if (raw == null) raw = new String[times.length];
+        raw[i] = new String(value, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param time The time.
+     * @return The index of the value valid at this time or -1 if there is none.
+     */
+    private int indexAt(int time) {
+        int i = Arrays.binarySearch(times, 0, count, time);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * @param i The index of the change.
+     * @return The value encoded as string.
+     */
+    private String decode(int i) {
+        if (raw != null && raw[i] != null) return raw[i];
+        int base = i * words;
+        char[] digits = new char[lengths[i]];
+        for (int k = 0; k < digits.length; k++) {
+            int bit = digits.length - 1 - k;
+            long mask = 1L << (bit & 63);
+            int word = base + (bit >>> 6);
+            boolean b = (bits[word] & mask) != 0;
+            if ((unknown[word] & mask) != 0) {
+                digits[k] = b ? 'z' : 'x';
+            } else {
+                digits[k] = b ? '1' : '0';
+            }
+        }
+        return new String(digits);
+    }
+
+    /**
+     * @param i The index of the change.
+     * @return The value as long, if it is known and fits.
+     */
+    private long decodeLong(int i) {
+        if (raw != null && raw[i] != null) return Long.parseLong(raw[i], 2);
+        int base = i * words;
+        for (int w = 0; w < words; w++) {
+            if (unknown[base + w] != 0)
+                throw new NumberFormatException("Value " + decode(i) + " of " + name + " contains unknown bits.");
+            if (w > 0 && bits[base + w] != 0)
+                throw new NumberFormatException("Value " + decode(i) + " of " + name + " exceeds 64 bits.");
+        }
+        return bits[base];
+    }
+
+    /**
+     * @param i The index of the first change.
+     * @param j The index of the second change.
+     * @return Whether both changes hold the same value.
+     */
+    private boolean sameValue(int i, int j) {
+        if (lengths[i] != lengths[j]) return false;
+        if (raw != null && !Objects.equals(raw[i], raw[j])) return false;
+        return Arrays.equals(bits, i * words, (i + 1) * words, bits, j * words, (j + 1) * words)
+                && Arrays.equals(unknown, i * words, (i + 1) * words, unknown, j * words, (j + 1) * words);
+    }
+
     /**
      * @param time The time.
      * @return The value at this time.
      */
     public String getValueAt(Integer time) {
-        return values.get(values.keySet().stream().filter(key -> key <= time).max(Integer::compare).orElseThrow());
+        int i = indexAt(time);
+        if (i < 0) throw new NoSuchElementException("No value of " + name + " at " + time + ".");
+        return decode(i);
+    }
+
+    /**
+     * @param time The time.
+     * @return The value at this time as long.
+     * @throws NumberFormatException If the value contains x or z or does not fit into a long.
+     */
+    public long getLongAt(int time) {
+        int i = indexAt(time);
+        if (i < 0) throw new NoSuchElementException("No value of " + name + " at " + time + ".");
+        return decodeLong(i);
+    }
+
+    /**
+     * @param time The time.
+     * @return Whether the value at this time is free of x and z.
+     */
+    public boolean isKnownAt(int time) {
+        int i = indexAt(time);
+        if (i < 0) throw new NoSuchElementException("No value of " + name + " at " + time + ".");
+        if (raw != null && raw[i] != null) return false;
+        for (int w = i * words; w < (i + 1) * words; w++) {
+            if (unknown[w] != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param i The index of the change.
+     * @return Whether the value differs from the one valid before.
+     */
+    private boolean isChange(int i) {
+        if (i > 0) return !sameValue(i, i - 1);
+        return times[0] != 0;
+    }
+
+    /**
+     * @param i The index of the change.
+     * @return Whether the value can be read as long.
+     */
+    private boolean isNumber(int i) {
+        try {
+            decodeLong(i);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param value A numeric value.
+     * @return The preferred slot of the value in the value index.
+     */
+    private int valueSlot(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (valueKeys.length - 1);
+    }
+
+    /**
+     * Builds the indexes of change points and first occurrences of values.
+     * Called once parsing has finished and again lazily if values were added afterwards.
+     */
+    void buildIndex() {
+        if (indexed) return;
+        times = Arrays.copyOf(times, count);
+        lengths = Arrays.copyOf(lengths, count);
+        bits = Arrays.copyOf(bits, count * words);
+        unknown = Arrays.copyOf(unknown, count * words);
+        if (raw != null) raw = Arrays.copyOf(raw, count);
+
+        int changeCount = 0;
+        changeTimes = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (isChange(i)) changeTimes[changeCount++] = times[i];
+        }
+        changeTimes = Arrays.copyOf(changeTimes, changeCount);
+
+        valueKeys = new long[Integer.highestOneBit(Math.max(changeCount, 1) * 4)];
+        valueFirst = new int[valueKeys.length];
+        Arrays.fill(valueFirst, -1);
+        firstNonNumber = count;
+        for (int i = 0; i < count; i++) {
+            if (!isNumber(i)) {
+                firstNonNumber = i;
+                break;
+            }
+            long value = decodeLong(i);
+            int slot = valueSlot(value);
+            while (valueFirst[slot] != -1 && valueKeys[slot] != value) slot = (slot + 1) & (valueKeys.length - 1);
+            if (valueFirst[slot] == -1) {
+                valueKeys[slot] = value;
+                valueFirst[slot] = i;
+            }
+        }
+        indexed = true;
     }
 
     /**
      * @return The tima at which the value of this wire changed last.
      */
     public Integer getLastChangeTime() {
-        return values.keySet().stream().filter(time -> !Objects.equals(values.get(time), values.get(values.keySet().stream().filter(key -> key < time).max(Integer::compare).orElse(0)))).max(Integer::compare).orElse(null);
+        buildIndex();
+        return changeTimes.length == 0 ? null : changeTimes[changeTimes.length - 1];
     }
 
     /**
@@ -66,7 +369,10 @@ public class Wire {
      * @return The time at which the wire changed before the time i.
      */
     public Integer getLastChangeBeforeTime(Integer i) {
-        return values.keySet().stream().filter(t -> t < i).filter(time -> !Objects.equals(values.get(time), values.get(values.keySet().stream().filter(key -> key < time).max(Integer::compare).orElse(0)))).max(Integer::compare).orElse(null);
+        buildIndex();
+        int j = Arrays.binarySearch(changeTimes, i);
+        j = j >= 0 ? j - 1 : -j - 2;
+        return j < 0 ? null : changeTimes[j];
     }
 
     /**
@@ -74,7 +380,26 @@ public class Wire {
      * @return The time at which the wire first had the requested value.
      */
     public Integer getFirstTimeValue(String s) {
-        return values.keySet().stream().sorted().filter(t -> StringUtils.equalValue(values.get(t), s)).findFirst().orElse(null);
+        if (count == 0) return null;
+        return getFirstTimeValue(Long.parseLong(s, 2));
+    }
+
+    /**
+     * @param value The requested value.
+     * @return The time at which the wire first had the requested value.
+     * @throws NumberFormatException If a value before the requested one is no number, e.g. contains x or z.
+     */
+    public Integer getFirstTimeValue(long value) {
+        buildIndex();
+        if (count == 0) return null;
+        int slot = valueSlot(value);
+        while (valueFirst[slot] != -1) {
+            if (valueKeys[slot] == value) return times[valueFirst[slot]];
+            slot = (slot + 1) & (valueKeys.length - 1);
+        }
+        if (firstNonNumber < count)
+            throw new NumberFormatException("Value " + decode(firstNonNumber) + " of " + name + " is no number.");
+        return null;
     }
 
     @Override
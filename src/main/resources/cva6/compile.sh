@@ -1,5 +1,9 @@
 cd "$1" || exit
 export LR_VERIF_OUT_DIR=$2
+# The number of test cases simulated side by side by the multi-instance testbench
+export BATCH=${3:-1}
+# The simulator the testbench is compiled for, either iverilog or verilator
+export SIMULATOR=${4:-iverilog}
 rm -r "$LR_VERIF_OUT_DIR"
 mkdir -p "$LR_VERIF_OUT_DIR"
 
@@ -47,6 +51,25 @@ sed -i "s/reg \[22:0\] cl_tag_valid_rdata \[3:0\];/wire [22:0] cl_tag_valid_rdat
 
 # Insert content from formal.prop into generated top.v as sv2v would remove it
 sed -i '/endmodule/i MARKER' "$LR_VERIF_OUT_DIR"/top.v
+# The multi-instance testbench simulates several test cases side by side, each in its own instance of top
+if [ "$BATCH" -gt 1 ]; then
+  mkdir -p "$LR_VERIF_OUT_DIR"/multi
+  sed -e '/MARKER/e cat verif\/slot.prop' -e '/MARKER/d' "$LR_VERIF_OUT_DIR"/top.v > "$LR_VERIF_OUT_DIR"/multi/top.v
+  finished="1"
+  {
+    echo 'module multi;'
+    echo '    reg clk;'
+    echo '    initial $dumpfile("sim.vcd");'
+    for ((slot = 0; slot < BATCH; slot++)); do
+      sed "s/SLOT/$slot/g" verif/multi.prop
+      finished="$finished && slot_$slot.slot_done"
+    done
+    echo "    always @(posedge clk) if ($finished) \$finish;"
+    echo '    initial begin #30000; $display("TIMEOUT"); $finish; end'
+    echo '    always begin clk <= 1; #5; clk <= 0; #5; end'
+    echo 'endmodule'
+  } > "$LR_VERIF_OUT_DIR"/multi/multi.v
+fi
 sed -i -e '/MARKER/e cat verif\/vcd.prop' -e '/MARKER/d' "$LR_VERIF_OUT_DIR"/top.v
 
 # Read initial memory content from files
@@ -61,5 +84,17 @@ sed -i '/\/\/ Trace: verif\/control.sv:22:9/i $readmemh({"count.dat"}, counters,
 
 cd "$LR_VERIF_OUT_DIR"/ || exit
 
-# shellcheck disable=SC2035
-iverilog -o ariane *.v
+if [ "$SIMULATOR" = "verilator" ]; then
+  # Compile the same testbench into a native model, timing support is required for the delays in the testbench
+  # shellcheck disable=SC2035
+  verilator --binary --timing --trace -j 0 -Wno-fatal -Wno-lint -Wno-style --top-module top -Mdir obj_dir -o ariane *.v
+  cp obj_dir/ariane ariane
+else
+  # shellcheck disable=SC2035
+  iverilog -o ariane *.v
+
+  if [ "$BATCH" -gt 1 ]; then
+    # shellcheck disable=SC2035,SC2046
+    iverilog -o ariane_multi $(ls *.v | grep -vx top.v) multi/top.v multi/multi.v
+  fi
+fi
@@ -1,5 +1,9 @@
 cd "$1" || exit
 export LR_VERIF_OUT_DIR=$2
+# The number of test cases simulated side by side by the multi-instance testbench
+export BATCH=${3:-1}
+# The simulator the testbench is compiled for, either iverilog, verilator or native
+export SIMULATOR=${4:-iverilog}
 rm -r "$LR_VERIF_OUT_DIR"
 mkdir -p "$LR_VERIF_OUT_DIR"
 
@@ -48,6 +52,31 @@ rm -f "$LR_VERIF_OUT_DIR"/ibex_register_file_fpga.v
 
 # Insert content from formal.prop into generated top.v as sv2v would remove it
 sed -i '/endmodule/i MARKER' "$LR_VERIF_OUT_DIR"/top.v
+# The multi-instance testbench simulates several test cases side by side, each in its own instance of top
+if [ "$BATCH" -gt 1 ]; then
+  mkdir -p "$LR_VERIF_OUT_DIR"/multi
+  sed -e '/MARKER/e cat verif\/slot.prop' -e '/MARKER/d' "$LR_VERIF_OUT_DIR"/top.v > "$LR_VERIF_OUT_DIR"/multi/top.v
+  finished="1"
+  {
+    echo 'module multi;'
+    echo '    reg clk;'
+    echo '    initial $dumpfile("sim.vcd");'
+    for ((slot = 0; slot < BATCH; slot++)); do
+      sed "s/SLOT/$slot/g" verif/multi.prop
+      finished="$finished && slot_$slot.slot_done"
+    done
+    echo "    always @(posedge clk) if ($finished) \$finish;"
+    echo '    initial begin #100000; $display("TIMEOUT"); $finish; end'
+    echo '    always begin clk <= 1; #5; clk <= 0; #5; end'
+    echo 'endmodule'
+  } > "$LR_VERIF_OUT_DIR"/multi/multi.v
+fi
+# The native testbench reports its verdict in a register and is loaded through VPI instead of reading files
+if [ "$SIMULATOR" = "native" ]; then
+  mkdir -p "$LR_VERIF_OUT_DIR"/native
+  sed -e '/MARKER/e cat verif\/native.prop' -e '/MARKER/d' "$LR_VERIF_OUT_DIR"/top.v > "$LR_VERIF_OUT_DIR"/native/top.v
+  cp "$LR_VERIF_OUT_DIR"/instr_mem.v "$LR_VERIF_OUT_DIR"/control.v "$LR_VERIF_OUT_DIR"/native/
+fi
 sed -i -e '/MARKER/e cat verif\/formal.prop' -e '/MARKER/d' "$LR_VERIF_OUT_DIR"/top.v
 
 # Read initial memory content from files
@@ -61,5 +90,26 @@ sed -i '/\/\/ Trace: verif\/control.sv:22:9/i $readmemh({"count.dat"}, counters,
 
 cd "$LR_VERIF_OUT_DIR"/ || exit
 
-# shellcheck disable=SC2035
-iverilog -o ibex *.v
\ No newline at end of file
+if [ "$SIMULATOR" = "native" ]; then
+  # Compile the testbench into a shared library with the C interface of native/model.cpp, all signals are public for VPI
+  # shellcheck disable=SC2046
+  verilator --cc --build --timing --vpi --public-flat-rw -j 0 -Wno-fatal -Wno-lint -Wno-style -CFLAGS -fPIC \
+    --top-module top -Mdir obj_native $(ls *.v | grep -vx -e top.v -e instr_mem.v -e control.v) native/*.v
+  VERILATOR_ROOT=$(verilator --getenv VERILATOR_ROOT)
+  g++ -shared -fPIC -O2 -std=c++17 -Iobj_native -I"$VERILATOR_ROOT"/include -I"$VERILATOR_ROOT"/include/vltstd \
+    "$1"/native/model.cpp -Wl,--whole-archive obj_native/Vtop__ALL.a -Wl,--no-whole-archive obj_native/libverilated.a \
+    -lpthread -latomic -o libibex_model.so
+elif [ "$SIMULATOR" = "verilator" ]; then
+  # Compile the same testbench into a native model, timing support is required for the delays in the testbench
+  # shellcheck disable=SC2035
+  verilator --binary --timing --trace -j 0 -Wno-fatal -Wno-lint -Wno-style --top-module top -Mdir obj_dir -o ibex *.v
+  cp obj_dir/ibex ibex
+else
+  # shellcheck disable=SC2035
+  iverilog -o ibex *.v
+
+  if [ "$BATCH" -gt 1 ]; then
+    # shellcheck disable=SC2035,SC2046
+    iverilog -o ibex_multi $(ls *.v | grep -vx top.v) multi/top.v multi/multi.v
+  fi
+fi
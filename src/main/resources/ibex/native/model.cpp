@@ -0,0 +1,274 @@
+// C interface of the testbench compiled by Verilator, loaded by contractgen.util.NativeModel.
+//
+// A model simulates one test case at a time: it is reset, the programs and the instruction count are written into
+// the memories through VPI and the simulation runs until the testbench reaches a verdict. Whenever a trigger signal
+// changes, the values of all watched signals are recorded, so the testbench neither reads files nor writes a trace.
+// Every model has its own simulation context, so models can be used by different threads concurrently.
+//
+// The design is built once. Right after time 0, the values of all signals are saved, including the memories, the
+// clock divider and the registers of the harness. A reset first lets the simulation run until the clocks are in the
+// same phase as at time 0, so restoring the saved values causes no clock edge, and then restores them. The cores see
+// their reset asserted again, which leaves them in the saved reset state. Only if the clocks do not get back into
+// phase, e.g. because a core stalls forever, the design is built again.
+
+#include "Vtop.h"
+#include "verilated.h"
+#include "verilated_vpi.h"
+
+#include <cstdint>
+#include <string>
+#include <unordered_set>
+#include <vector>
+
+namespace {
+
+// The verdict of a simulation that did not finish in time, the testbench encodes the other verdicts.
+constexpr int TIMEOUT = 4;
+// The clocks of the harness, which must have their saved values before the saved values are restored.
+const char* const CLOCKS[] = {"top.clk", "top.clock", "top.clock_1", "top.clock_2"};
+// The number of time slots simulated at most to get the clocks back into the phase of time 0.
+constexpr int MAX_ALIGN_SLOTS = 1000;
+
+struct Watch {
+    std::string path;
+    bool trigger;
+    vpiHandle handle;
+};
+
+struct Saved {
+    vpiHandle handle;
+    std::vector<s_vpi_vecval> value;
+};
+
+struct Model {
+    VerilatedContext* context = nullptr;
+    Vtop* top = nullptr;
+    vpiHandle verdict = nullptr;
+    // the values of all signals right after time 0
+    std::vector<Saved> initial;
+    // the clocks with their values right after time 0
+    std::vector<std::pair<vpiHandle, uint64_t>> clocks;
+    // the time at which the latest simulation started
+    uint64_t start = 0;
+    std::vector<Watch> watches;
+    // the values of the watched signals before the latest evaluation
+    std::vector<uint64_t> last;
+    // one row of values of all watched signals per record
+    std::vector<uint64_t> records;
+};
+
+vpiHandle resolve(const std::string& path) {
+    return vpi_handle_by_name(const_cast<PLI_BYTE8*>(path.c_str()), nullptr);
+}
+
+uint64_t read(vpiHandle handle) {
+    if (handle == nullptr) return 0;
+    s_vpi_value value;
+    value.format = vpiVectorVal;
+    vpi_get_value(handle, &value);
+    uint64_t result = static_cast<uint32_t>(value.value.vector[0].aval);
+    if (vpi_get(vpiSize, handle) > 32) result |= static_cast<uint64_t>(static_cast<uint32_t>(value.value.vector[1].aval)) << 32;
+    return result;
+}
+
+// Saves the value of a signal or of every word of an array.
+void save(Model* model, vpiHandle handle) {
+    PLI_INT32 type = vpi_get(vpiType, handle);
+    if (type == vpiMemory || type == vpiRegArray || type == vpiNetArray) {
+        vpiHandle words = vpi_iterate(vpiMemoryWord, handle);
+        if (words == nullptr) return;
+        while (vpiHandle word = vpi_scan(words)) save(model, word);
+        return;
+    }
+    s_vpi_value value;
+    value.format = vpiVectorVal;
+    vpi_get_value(handle, &value);
+    if (value.value.vector == nullptr) return;
+    int size = vpi_get(vpiSize, handle);
+    model->initial.push_back({handle, std::vector<s_vpi_vecval>(value.value.vector, value.value.vector + (size + 31) / 32)});
+}
+
+// Saves the signals of a module and of all modules within it, each signal once.
+void save(Model* model, vpiHandle module, std::unordered_set<std::string>& saved) {
+    for (PLI_INT32 type : {vpiNet, vpiReg, vpiMemory}) {
+        vpiHandle signals = vpi_iterate(type, module);
+        if (signals == nullptr) continue;
+        while (vpiHandle signal = vpi_scan(signals)) {
+            if (saved.insert(vpi_get_str(vpiFullName, signal)).second) save(model, signal);
+        }
+    }
+    vpiHandle modules = vpi_iterate(vpiModule, module);
+    if (modules == nullptr) return;
+    while (vpiHandle child = vpi_scan(modules)) save(model, child, saved);
+}
+
+void restore(Model* model) {
+    for (Saved& saved : model->initial) {
+        s_vpi_value value;
+        value.format = vpiVectorVal;
+        value.value.vector = saved.value.data();
+        vpi_put_value(saved.handle, &value, nullptr, vpiNoDelay);
+    }
+}
+
+bool aligned(Model* model) {
+    for (const auto& clock : model->clocks) {
+        if (read(clock.first) != clock.second) return false;
+    }
+    return true;
+}
+
+void release(Model* model) {
+    if (model->top != nullptr) {
+        model->top->final();
+        delete model->top;
+    }
+    delete model->context;
+    model->top = nullptr;
+    model->context = nullptr;
+}
+
+void record(Model* model) {
+    for (size_t i = 0; i < model->watches.size(); i++) model->records.push_back(model->last[i]);
+}
+
+// Updates the last values and records them if a trigger signal changed.
+void sample(Model* model) {
+    bool triggered = false;
+    for (size_t i = 0; i < model->watches.size(); i++) {
+        uint64_t value = read(model->watches[i].handle);
+        if (value != model->last[i] && model->watches[i].trigger) triggered = true;
+        model->last[i] = value;
+    }
+    if (triggered) record(model);
+}
+
+// Builds the design, runs the initial blocks at time 0 and saves the values of all signals.
+void build(Model* model) {
+    release(model);
+    model->context = new VerilatedContext;
+    Verilated::threadContextp(model->context);
+    model->top = new Vtop{model->context};
+    model->top->eval();
+    model->verdict = resolve("top.verdict");
+    model->initial.clear();
+    std::unordered_set<std::string> saved;
+    vpiHandle modules = vpi_iterate(vpiModule, nullptr);
+    if (modules != nullptr) {
+        while (vpiHandle module = vpi_scan(modules)) save(model, module, saved);
+    }
+    model->clocks.clear();
+    for (const char* clock : CLOCKS) {
+        vpiHandle signal = resolve(clock);
+        if (signal != nullptr) model->clocks.emplace_back(signal, read(signal));
+    }
+    for (Watch& watch : model->watches) watch.handle = resolve(watch.path);
+}
+
+}  // namespace
+
+extern "C" {
+
+// Resets all state including the memories to the state right after time 0 and takes the initial record.
+void model_reset(void* handle) {
+    Model* model = static_cast<Model*>(handle);
+    Verilated::threadContextp(model->context);
+    for (int slot = 0; slot < MAX_ALIGN_SLOTS && !aligned(model) && model->top->eventsPending(); slot++) {
+        model->context->time(model->top->nextTimeSlot());
+        model->top->eval();
+    }
+    if (aligned(model)) {
+        restore(model);
+    } else {
+        build(model);
+    }
+    model->start = model->context->time();
+    model->records.clear();
+    for (size_t i = 0; i < model->watches.size(); i++) model->last[i] = read(model->watches[i].handle);
+    record(model);
+}
+
+void* model_create() {
+    Model* model = new Model;
+    build(model);
+    record(model);
+    return model;
+}
+
+void model_destroy(void* handle) {
+    Model* model = static_cast<Model*>(handle);
+    release(model);
+    delete model;
+}
+
+// Returns the index of the signal within each record or -1 if there is no such signal.
+int model_watch(void* handle, const char* path, int trigger) {
+    Model* model = static_cast<Model*>(handle);
+    Verilated::threadContextp(model->context);
+    vpiHandle signal = resolve(path);
+    if (signal == nullptr) return -1;
+    model->watches.push_back({path, trigger != 0, signal});
+    model->last.push_back(read(signal));
+    // the records taken so far lack the new signal
+    model->records.clear();
+    record(model);
+    return static_cast<int>(model->watches.size()) - 1;
+}
+
+// Returns the width of a watched signal in bits.
+int model_width(void* handle, int signal) {
+    Model* model = static_cast<Model*>(handle);
+    Verilated::threadContextp(model->context);
+    return vpi_get(vpiSize, model->watches[signal].handle);
+}
+
+// Writes words into a memory starting at an index, returns 0 on success and -1 if the memory or a word is missing.
+int model_load_program(void* handle, const char* path, int offset, const uint32_t* words, int count) {
+    Model* model = static_cast<Model*>(handle);
+    Verilated::threadContextp(model->context);
+    vpiHandle memory = resolve(path);
+    if (memory == nullptr) return -1;
+    for (int i = 0; i < count; i++) {
+        vpiHandle word = vpi_handle_by_index(memory, offset + i);
+        if (word == nullptr) return -1;
+        s_vpi_value value;
+        value.format = vpiIntVal;
+        value.value.integer = static_cast<PLI_INT32>(words[i]);
+        vpi_put_value(word, &value, nullptr, vpiNoDelay);
+    }
+    return 0;
+}
+
+// Simulates until the testbench reaches a verdict or the time limit after the latest reset, returns the verdict or
+// TIMEOUT.
+int model_step_until_done(void* handle, uint64_t max_time) {
+    Model* model = static_cast<Model*>(handle);
+    Verilated::threadContextp(model->context);
+    while (model->top->eventsPending() && model->top->nextTimeSlot() <= model->start + max_time) {
+        model->context->time(model->top->nextTimeSlot());
+        model->top->eval();
+        sample(model);
+        int verdict = static_cast<int>(read(model->verdict));
+        if (verdict != 0) return verdict;
+    }
+    return TIMEOUT;
+}
+
+int model_record_count(void* handle) {
+    Model* model = static_cast<Model*>(handle);
+    return model->watches.empty() ? 0 : static_cast<int>(model->records.size() / model->watches.size());
+}
+
+uint64_t model_record(void* handle, int record, int signal) {
+    Model* model = static_cast<Model*>(handle);
+    return model->records[static_cast<size_t>(record) * model->watches.size() + signal];
+}
+
+// Reads the current value of any signal, 0 if there is no such signal.
+uint64_t model_read_signal(void* handle, const char* path) {
+    Model* model = static_cast<Model*>(handle);
+    Verilated::threadContextp(model->context);
+    return read(resolve(path));
+}
+
+}  // extern "C"
@@ -2,4 +2,5 @@
 
 cd /home/yosys/project
 mvn package
-java -cp target/contractgen-1.0-SNAPSHOT.jar src/main/java/contractgen/ContractGen.java
+# the native backend loads its models through the restricted methods of the foreign function API
+java --enable-native-access=ALL-UNNAMED -cp target/contractgen-1.0-SNAPSHOT.jar src/main/java/contractgen/ContractGen.java